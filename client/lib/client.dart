@@ -25,6 +25,7 @@
  */
 
 import 'dart:async';
+import 'dart:convert';
 
 import 'package:http/http.dart' as http;
 import 'package:protobuf/protobuf.dart';
@@ -41,12 +42,21 @@ import 'package:spine_client/spine/core/diagnostics.pb.dart';
 import 'package:spine_client/spine/core/tenant_id.pb.dart';
 import 'package:spine_client/spine/core/user_id.pb.dart';
 import 'package:spine_client/spine/time/time.pb.dart';
+import 'package:spine_client/spine/web/dart/command_batch.pb.dart';
+import 'package:spine_client/spine/web/dart/command_observation.pb.dart';
+import 'package:spine_client/spine/web/dart/keep_up.pb.dart';
 import 'package:spine_client/spine/web/firebase/subscription/firebase_subscription.pb.dart';
 import 'package:spine_client/src/actor_request_factory.dart';
 import 'package:spine_client/src/any_packer.dart';
+import 'package:spine_client/src/command_outbox.dart';
+import 'package:spine_client/src/entity_store.dart';
+import 'package:spine_client/src/filter_evaluator.dart';
 import 'package:spine_client/src/http_client.dart';
 import 'package:spine_client/src/json.dart';
 import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/message_copy.dart';
+import 'package:spine_client/src/message_decoder.dart';
+import 'package:spine_client/src/query_cache.dart';
 import 'package:spine_client/src/query_processor.dart';
 import 'package:spine_client/subscription.dart';
 import 'package:spine_client/validate.dart';
@@ -95,7 +105,12 @@ class Clients {
     final FirebaseClient? _firebase;
     final Endpoints _endpoints;
     final QueryResponseProcessor _queryProcessor;
+    final QueryCache? _queryCache;
+    final EntityStore? _entityStore;
+    final SubscriptionErrorCallback _onSubscriptionError;
     final Set<Client> _activeClients = Set();
+    late final Timer _keepUpTimer;
+    late final CommandOutbox? _outbox;
 
     /// Creates a new instance of `Clients`.
     ///
@@ -114,6 +129,35 @@ class Clients {
     ///  - [endpoints] — the custom endpoints of the backend; see [Endpoints] for the defaults;
     ///  - [subscriptionKeepUpPeriod] — the time between subscription keep-up requests;
     ///    2 minutes by default;
+    ///  - [onSubscriptionError] — a callback which receives the errors of the requests sent in
+    ///    the background to keep up and to cancel subscriptions, e.g. while the backend is
+    ///    unreachable; by default, such errors are ignored;
+    ///  - [queryCacheTtl] — the time for which the query results are cached; if set, the results
+    ///    of a query are reused by the equivalent queries of the same user until they expire or
+    ///    an active state subscription receives an update of an entity of the queried type;
+    ///    by default, the query results are not cached;
+    ///  - [queryCacheCapacity] — the maximum number of entity states held by the query cache;
+    ///    the least recently used results are evicted first; 10,000 by default;
+    ///  - [decoder] — a [MessageDecoder] which parses the query results; e.g. pass
+    ///    an `IsolateDecoder` to parse large query results off the calling isolate; by default,
+    ///    the results are parsed on the calling isolate;
+    ///  - [entityStore] — an [EntityStore] which shares the entity states received by all
+    ///    the created clients; if set, the queries and state subscriptions deliver the frozen
+    ///    instances held by the store; by default, each query and subscription delivers its own
+    ///    instances;
+    ///  - [commandOutbox] — an [OutboxStorage] which keeps the commands not yet delivered to
+    ///    the backend; if set, the commands posted while the backend is unreachable are stored and
+    ///    sent again, in the order of posting, once it is reachable; the commands with event
+    ///    observers posted via [Endpoints.postAndObserve] are not stored; by default, posting
+    ///    a command fails if the backend is unreachable; see `FileOutboxStorage` for the default
+    ///    storage on the VM;
+    ///  - [commandBatchSize] — the maximum number of stored commands sent in a single request
+    ///    to the [Endpoints.commandBatch] endpoint; 50 by default;
+    ///  - [commandRetryPeriod] — the time between attempts to send the stored commands;
+    ///    30 seconds by default;
+    ///  - [transport] — an `http.Client` which sends the requests to the backend; the same
+    ///    transport is reused by all the created clients, so that the connections are kept alive
+    ///    between requests; by default, the platform client is used;
     ///  - [onNetworkError] — a callback handling network errors;
     ///    should receive either error as the only argument or error and [StackTrace];
     ///    should return a `FutureOr<Response>`;
@@ -131,21 +175,43 @@ class Clients {
             FirebaseClient? firebase = null,
             Endpoints? endpoints = null,
             Duration subscriptionKeepUpPeriod = const Duration(minutes: 2),
+            SubscriptionErrorCallback? onSubscriptionError = null,
+            Duration? queryCacheTtl = null,
+            int queryCacheCapacity = 10000,
+            MessageDecoder? decoder = null,
+            EntityStore? entityStore = null,
+            OutboxStorage? commandOutbox = null,
+            int commandBatchSize = 50,
+            Duration commandRetryPeriod = const Duration(seconds: 30),
+            http.Client? transport = null,
             List<dynamic> typeRegistries = const []}) :
-            _httpClient = HttpClient(baseUrl),
+            _httpClient = HttpClient(baseUrl, transport: transport),
             _guestId = guestId ?? _DEFAULT_GUEST_ID,
             _tenant = tenantId,
             _zoneOffset = zoneOffset,
             _zoneId = zoneId,
-            _queryProcessor = _chooseProcessor(queryMode, firebase),
+            _queryProcessor = _chooseProcessor(queryMode,
+                                               firebase,
+                                               decoder ?? const InlineDecoder()),
+            _queryCache = queryCacheTtl == null
+                          ? null
+                          : QueryCache(queryCacheTtl, queryCacheCapacity),
+            _entityStore = entityStore,
+            _onSubscriptionError = onSubscriptionError ?? _ignore,
             _endpoints = endpoints ?? Endpoints(),
             _firebase = firebase
     {
         _checkNonNullOrDefault(_guestId, 'guestId');
         ArgumentError.checkNotNull(subscriptionKeepUpPeriod, 'subscriptionKeepUpPeriod');
         theKnownTypes.registerAll(typeRegistries);
-        Timer.periodic(subscriptionKeepUpPeriod,
-                       (timer) => _refreshSubscriptions());
+        _keepUpTimer = Timer.periodic(subscriptionKeepUpPeriod,
+                                      (timer) => _refreshSubscriptions());
+        _outbox = commandOutbox == null
+                  ? null
+                  : CommandOutbox(commandOutbox,
+                                  _sendCommands,
+                                  commandBatchSize,
+                                  commandRetryPeriod);
     }
 
     static void _checkNonNullOrDefault(GeneratedMessage argument, String name) {
@@ -156,11 +222,20 @@ class Clients {
         }
     }
 
-    static QueryResponseProcessor _chooseProcessor(QueryMode queryMode, FirebaseClient? firebase) {
+    static void _ignore(Object error, StackTrace stackTrace) {}
+
+    static QueryResponseProcessor _chooseProcessor(QueryMode queryMode,
+                                                   FirebaseClient? firebase,
+                                                   MessageDecoder decoder) {
         ArgumentError.checkNotNull(queryMode, 'queryMode');
-        return queryMode == QueryMode.FIREBASE
-               ? FirebaseResponseProcessor(firebase!)
-               : DirectResponseProcessor();
+        switch (queryMode) {
+            case QueryMode.DIRECT:
+                return DirectResponseProcessor(decoder);
+            case QueryMode.FIREBASE:
+                return FirebaseResponseProcessor(firebase!, decoder);
+            case QueryMode.ADAPTIVE:
+                return AdaptiveResponseProcessor(firebase!, decoder);
+        }
     }
 
     /// Creates a new client which sends requests on behalf of a guest user.
@@ -184,22 +259,183 @@ class Clients {
                  requests,
                  _firebase,
                  _endpoints,
-                 _queryProcessor);
+                 _queryProcessor,
+                 _queryCache,
+                 _entityStore,
+                 _outbox,
+                 _onSubscriptionError,
+                 _activeClients);
 
     ActorRequestFactory _requests(UserId actor) =>
         ActorRequestFactory(actor, _tenant, _zoneOffset, _zoneId);
 
     /// Cancels all the active subscriptions
     void cancelAllSubscriptions() {
-        for (var client in _activeClients) {
+        for (var client in List.of(_activeClients)) {
             client.cancelAllSubscriptions();
         }
         _activeClients.clear();
     }
 
+    /// Stops keeping up the subscriptions and closes the connections to the backend.
+    ///
+    /// The subscriptions are not cancelled; call [cancelAllSubscriptions] beforehand if needed.
+    /// A custom `transport` passed to the constructor is left open.
+    ///
+    void close() {
+        _keepUpTimer.cancel();
+        _outbox?.close();
+        _httpClient.close();
+    }
+
+    /// The number of the commands which are stored in the `commandOutbox` and not yet delivered
+    /// to the backend.
+    ///
+    int get pendingCommands => _outbox?.length ?? 0;
+
+    /// Sends the commands stored in the `commandOutbox` to the backend right away.
+    ///
+    /// Call this method when the connectivity is restored in order not to wait for the next retry.
+    ///
+    /// Returns a future which completes when all the stored commands are delivered or
+    /// the backend turns out to be unreachable.
+    ///
+    Future<void> flushCommands() => _outbox?.flush() ?? Future.value();
+
+    /// Sends the given commands stored in the outbox to the backend.
+    ///
+    /// If the [Endpoints.commandBatch] endpoint is configured, several commands are sent in
+    /// a single request. Otherwise, the commands are sent one by one.
+    ///
+    /// The network errors and the server errors are not propagated. Instead, only
+    /// the acknowledgements received before the error are returned. The commands which are not
+    /// acknowledged are considered undelivered and are sent again later.
+    ///
+    /// If the backend rejects a request with a client error, e.g. `404 Not Found`, or responds
+    /// with something other than an acknowledgement, sending it again is pointless. Such commands
+    /// are acknowledged with an error instead.
+    ///
+    Future<List<Ack>> _sendCommands(List<Command> commands) async {
+        var batchEndpoint = _endpoints.commandBatch;
+        if (batchEndpoint != null && commands.length > 1) {
+            return _sendBatch(batchEndpoint, commands);
+        }
+        var acks = <Ack>[];
+        for (var command in commands) {
+            var ack = await _sendCommand(command);
+            if (ack == null) {
+                break;
+            }
+            acks.add(ack);
+        }
+        return acks;
+    }
+
+    /// Sends the given commands in a single request.
+    ///
+    /// Returns the received acknowledgements, which go in the order of the commands, or
+    /// an empty list if the request fails and should be retried.
+    ///
+    Future<List<Ack>> _sendBatch(String endpoint, List<Command> commands) async {
+        var request = CommandBatch()
+            ..command.addAll(commands);
+        http.Response response;
+        try {
+            response = await _httpClient.postMessage(endpoint, request);
+        } catch (e) {
+            return [];
+        }
+        if (_isServerError(response)) {
+            return [];
+        }
+        var error = _clientError(response);
+        if (error != null) {
+            return commands.map((command) => _rejected(command, error)).toList();
+        }
+        try {
+            var result = CommandBatchResponse();
+            parseInto(result, response.body);
+            return result.ack.take(commands.length).toList();
+        } catch (e) {
+            var message = 'Cannot parse the acknowledgements: $e';
+            return commands.map((command) => _rejected(command, message)).toList();
+        }
+    }
+
+    /// Sends the given command.
+    ///
+    /// Returns the received acknowledgement or `null` if the request fails and should be retried.
+    ///
+    Future<Ack?> _sendCommand(Command command) async {
+        http.Response response;
+        try {
+            response = await _httpClient.postMessage(_endpoints.command, command);
+        } catch (e) {
+            return null;
+        }
+        if (_isServerError(response)) {
+            return null;
+        }
+        var error = _clientError(response);
+        if (error != null) {
+            return _rejected(command, error);
+        }
+        try {
+            var ack = Ack();
+            parseInto(ack, response.body);
+            return ack;
+        } catch (e) {
+            return _rejected(command, 'Cannot parse the acknowledgement: $e');
+        }
+    }
+
+    /// Obtains the description of the client error the [response] reports, or `null` if
+    /// the response is not a client error.
+    static String? _clientError(http.Response response) {
+        var code = response.statusCode;
+        if (code < 400 || code >= 500) {
+            return null;
+        }
+        return 'The command is rejected with HTTP status $code.';
+    }
+
+    /// Creates an acknowledgement of the [command] which is not accepted by the backend.
+    static Ack _rejected(Command command, String message) {
+        var error = pbError.Error()
+            ..message = message;
+        return Ack()
+            ..messageId = pack(command.id)
+            ..status = (Status()..error = error);
+    }
+
+    static bool _isServerError(http.Response response) => response.statusCode >= 500;
+
+    /// Prolongs the lifetime of all the active subscriptions of all the clients.
+    ///
+    /// If the [SubscriptionEndpoints.keepUpAll] endpoint is configured, all the subscriptions are
+    /// kept up with a single request. Otherwise, a request is sent per subscription.
+    ///
     void _refreshSubscriptions() {
-        for (var client in _activeClients) {
-            client._refreshSubscriptions();
+        var subscriptions = _activeClients
+            .expand((client) => client._activeSubscriptions)
+            .map((subscription) => subscription.subscription)
+            .toList();
+        if (subscriptions.isEmpty) {
+            return;
+        }
+        var keepUpAll = _endpoints.subscription.keepUpAll;
+        if (keepUpAll == null) {
+            for (var subscription in subscriptions) {
+                _httpClient
+                    .postMessage(_endpoints.subscription.keepUp, subscription)
+                    .then((_) {}, onError: _onSubscriptionError);
+            }
+        } else {
+            var request = KeepUpRequest()
+                ..subscription.addAll(subscriptions);
+            _httpClient
+                .postMessage(keepUpAll, request)
+                .then((_) {}, onError: _onSubscriptionError);
         }
     }
 }
@@ -214,13 +450,32 @@ class Client {
     final FirebaseClient? _firebase;
     final Endpoints _endpoints;
     final QueryResponseProcessor _queryProcessor;
+    final QueryCache? _queryCache;
+    final EntityStore? _entityStore;
+    final CommandOutbox? _outbox;
+    final SubscriptionErrorCallback _onSubscriptionError;
     final Set<Subscription> _activeSubscriptions = Set();
+    final Map<String, _SharedSubscription> _sharedSubscriptions = Map();
+    final Expando<_SharedSubscription> _sharedHolders = Expando();
+    final Map<String, Future<List<GeneratedMessage>>> _inFlightQueries = Map();
+
+    /// The clients which have active subscriptions.
+    ///
+    /// A client is a member of this set only while it has active subscriptions, so that
+    /// the clients which are no longer used are not retained.
+    ///
+    final Set<Client> _activeClients;
 
     Client._(this._httpClient,
              this._requests,
              this._firebase,
              this._endpoints,
-             this._queryProcessor);
+             this._queryProcessor,
+             this._queryCache,
+             this._entityStore,
+             this._outbox,
+             this._onSubscriptionError,
+             this._activeClients);
 
     /// Constructs a request to post a command to the server.
     CommandRequest<M> command<M extends GeneratedMessage>(M commandMessage) {
@@ -240,6 +495,141 @@ class Client {
         return StateSubscriptionRequest._(this, type);
     }
 
+    /// Constructs a request to create a live query.
+    ///
+    /// A live query is an entity state subscription which starts with the current state of
+    /// the matching entities. Those are delivered via `itemAdded` first, followed by the regular
+    /// updates. The server registers the subscription before reading the current states, so that
+    /// no change is missed in between.
+    ///
+    /// Live queries are served by the [SubscriptionEndpoints.liveQuery] endpoint, which must be
+    /// configured.
+    ///
+    StateSubscriptionRequest<M> liveQuery<M extends GeneratedMessage>() {
+        var type = M;
+        return StateSubscriptionRequest._(this, type, withSnapshot: true);
+    }
+
+    /// Resumes the [previous] entity state subscription, e.g. after the client reconnects.
+    ///
+    /// Instead of creating the subscription anew and receiving all the matching entities again,
+    /// the server delivers only the changes made after the [StateSubscription.seenVersion] of
+    /// the [previous] subscription. The entities which no longer match are delivered via
+    /// `itemRemoved`. If the server no longer has the [previous] subscription, e.g. it has
+    /// expired, all the matching entities are delivered as with a [liveQuery].
+    ///
+    /// The [previous] subscription is superseded by the resumed one and stops receiving updates.
+    /// While the request is in flight, the updates of the [previous] subscription are held back,
+    /// so that the deletion of its node by the server is not delivered as removal of
+    /// the entities. If the request fails, the held updates are delivered.
+    ///
+    /// If the [previous] subscription is shared with equivalent requests, the shared subscription
+    /// is resumed for all of its holders, which keep receiving the updates via their streams.
+    /// The [previous] holder is released, and a new holder is returned.
+    ///
+    /// Subscriptions are resumed via the [SubscriptionEndpoints.resume] endpoint, which must be
+    /// configured.
+    ///
+    Future<StateSubscription<M>>
+    resume<M extends GeneratedMessage>(StateSubscription<M> previous) {
+        ArgumentError.checkNotNull(previous, 'previous');
+        var path = _endpoints.subscription.resume;
+        if (path == null) {
+            throw StateError('Cannot resume a subscription. '
+                             'The `resume` endpoint is not configured.');
+        }
+        if (_firebase == null) {
+            throw StateError('Cannot resume a subscription. No Firebase client is provided.');
+        }
+        var shared = _sharedHolders[previous];
+        if (shared != null) {
+            return _resumeShared(previous, shared, path);
+        }
+        var subscription = previous.subscription;
+        var builderInfo = theKnownTypes.findBuilderInfo(subscription.topic.target.type)!;
+        return _requestResume(previous, path).then((value) {
+            // The server subscription of `previous` no longer exists and should not be
+            // cancelled.
+            _activeSubscriptions.remove(previous);
+            previous.unsubscribe();
+            return _activate(value, (s, d, onUnsubscribe) => StateSubscription.resumed(
+                previous, s, builderInfo, d,
+                onUnsubscribe: onUnsubscribe,
+                onUpdate: _cacheInvalidator(subscription.topic.target.type),
+                store: _storeFor(subscription.topic.fieldMask)
+            ));
+        });
+    }
+
+    /// Resumes the subscription shared by the [previous] holder and creates a new holder of it.
+    ///
+    /// The shared subscription is resumed once for all of its holders. If it has already been
+    /// resumed since the [previous] holder was created, or is being resumed, no more requests are
+    /// sent to the server.
+    ///
+    Future<StateSubscription<M>>
+    _resumeShared<M extends GeneratedMessage>(StateSubscription<M> previous,
+                                              _SharedSubscription shared,
+                                              String path) {
+        return shared.subscription.then((current) {
+            var resuming = shared.resuming;
+            if (resuming == null) {
+                resuming = current.subscription.id == previous.subscription.id
+                           ? _relocate(current, shared, path)
+                           : Future.value(current);
+            }
+            return resuming;
+        }).then((resumed) {
+            shared.holders++;
+            var holder = _newHolder(resumed as StateSubscription<M>, shared);
+            previous.unsubscribe();
+            return holder;
+        });
+    }
+
+    /// Resumes the [source] subscription shared via the given [shared] entry under another node.
+    ///
+    /// The streams of the [source] are carried over to the resumed subscription, so that all
+    /// the holders keep receiving the updates.
+    ///
+    Future<StateSubscription> _relocate(StateSubscription source,
+                                        _SharedSubscription shared,
+                                        String path) {
+        var resuming = _requestResume(source, path).then((value) {
+            // The server subscription of `source` no longer exists and should not be cancelled,
+            // while its streams are still in use.
+            _activeSubscriptions.remove(source);
+            var resumed = _activate(value, (s, d, onUnsubscribe) =>
+                source.relocate(s, d, onUnsubscribe: onUnsubscribe));
+            shared.subscription = Future.value(resumed);
+            return resumed;
+        });
+        shared.resuming = resuming;
+        void complete(_) {
+            if (identical(shared.resuming, resuming)) {
+                shared.resuming = null;
+            }
+        }
+        resuming.then(complete, onError: complete);
+        return resuming;
+    }
+
+    /// Sends the request to resume the [previous] subscription.
+    ///
+    /// The updates of the [previous] subscription are held back until the request fails.
+    ///
+    Future<FirebaseSubscription> _requestResume(StateSubscription previous, String path) {
+        var parameters = {_seenVersionParameter: '${previous.seenVersion ?? 0}'};
+        previous.holdUpdates();
+        return _httpClient
+            .postMessage(path, previous.subscription, parameters: parameters)
+            .then(_parseFirebaseSubscription)
+            .catchError((Object error, StackTrace stackTrace) {
+                previous.releaseUpdates();
+                return Future<FirebaseSubscription>.error(error, stackTrace);
+            });
+    }
+
     /// Constructs a request to create an event subscription.
     EventSubscriptionRequest<M> subscribeToEvents<M extends GeneratedMessage>() {
         var type = M;
@@ -248,37 +638,128 @@ class Client {
 
     /// Cancels all the subscriptions created by this client.
     void cancelAllSubscriptions() {
-        for (Subscription subscription in _activeSubscriptions) {
+        for (var subscription in List.of(_activeSubscriptions)) {
             subscription.unsubscribe();
-            _cancel(subscription.subscription);
         }
-        _activeSubscriptions.clear();
+        for (var shared in _sharedSubscriptions.values) {
+            shared.holders = 0;
+            _close(shared);
+        }
+        _sharedSubscriptions.clear();
     }
 
     Future<void> _postCommand(Command command, CommandErrorCallback? onError) {
+        var outbox = _outbox;
+        if (outbox != null) {
+            return outbox.post(command, (ack) => _reportError(ack, onError));
+        }
         var response = _httpClient.postMessage(_endpoints.command, command);
         return response.then((response) {
             var ack = Ack();
             parseInto(ack, response.body);
-            if (ack.status.hasError() && onError != null) {
-                onError(ack.status.error);
-            }
+            _reportError(ack, onError);
         });
     }
 
+    static void _reportError(Ack ack, CommandErrorCallback? onError) {
+        if (ack.status.hasError() && onError != null) {
+            onError(ack.status.error);
+        }
+    }
+
+    Future<PostAndObserveResponse> _postAndObserve(Command command, Iterable<String> eventTypes) {
+        if (_firebase == null) {
+            throw StateError('Cannot observe events. No Firebase client is provided.');
+        }
+        var request = PostAndObserveRequest()
+            ..command = command
+            ..eventType.addAll(eventTypes);
+        return _httpClient
+            .postMessage(_endpoints.postAndObserve!, request)
+            .then((response) {
+                var result = PostAndObserveResponse();
+                parseInto(result, response.body);
+                return result;
+            });
+    }
+
     Future<EventSubscription<E>>
-    _subscribeToEvents<E extends GeneratedMessage>(pbSubscription.Topic topic) {
-        return _subscribe(topic, (s, d) => EventSubscription.of(s, d));
+    _subscribeToEvents<E extends GeneratedMessage>(pbSubscription.Topic topic,
+                                                   {Map<String, String> parameters = const {}}) {
+        return _subscribe(topic,
+                          (s, d, onUnsubscribe) =>
+                              EventSubscription.of(s, d, onUnsubscribe: onUnsubscribe),
+                          parameters: parameters);
     }
 
     Future<StateSubscription<S>>
     _subscribeToStateUpdates<S extends GeneratedMessage>(pbSubscription.Topic topic,
-                                                         BuilderInfo builderInfo) {
-        return _subscribe(topic, (s, d) => StateSubscription.of(s, builderInfo, d));
+                                                         BuilderInfo builderInfo,
+                                                         {Map<String, String> parameters = const {},
+                                                          String? path = null}) {
+        return _subscribe(topic,
+                          (s, d, onUnsubscribe) =>
+                              StateSubscription.of(s, builderInfo, d,
+                                                   onUnsubscribe: onUnsubscribe,
+                                                   onUpdate: _cacheInvalidator(topic.target.type),
+                                                   store: _storeFor(topic.fieldMask)),
+                          parameters: parameters,
+                          path: path);
+    }
+
+    Future<StateSubscription<S>>
+    _subscribeShared<S extends GeneratedMessage>(pbSubscription.Topic topic,
+                                                 BuilderInfo builderInfo,
+                                                 Map<String, String> parameters) {
+        var key = _sharingKey(topic.target, parameters);
+        var shared = _sharedSubscriptions[key];
+        if (shared == null) {
+            var created = _subscribeToStateUpdates<S>(topic, builderInfo, parameters: parameters);
+            var newShared = _SharedSubscription(key, created);
+            created.then((_) {}, onError: (_) {
+                if (identical(_sharedSubscriptions[key], newShared)) {
+                    _sharedSubscriptions.remove(key);
+                }
+            });
+            _sharedSubscriptions[key] = newShared;
+            shared = newShared;
+        }
+        var holder = shared;
+        holder.holders++;
+        return holder.subscription.then((subscription) =>
+            _newHolder(subscription as StateSubscription<S>, holder));
+    }
+
+    /// Creates a new holder of the [subscription] shared via the given [shared] entry.
+    StateSubscription<S> _newHolder<S extends GeneratedMessage>(StateSubscription<S> subscription,
+                                                               _SharedSubscription shared) {
+        var holder = StateSubscription<S>.shared(subscription, () => _release(shared));
+        _sharedHolders[holder] = shared;
+        return holder;
+    }
+
+    void _release(_SharedSubscription shared) {
+        if (shared.holders == 0) {
+            return;
+        }
+        shared.holders--;
+        if (shared.holders > 0) {
+            return;
+        }
+        if (identical(_sharedSubscriptions[shared.key], shared)) {
+            _sharedSubscriptions.remove(shared.key);
+        }
+        _close(shared);
+    }
+
+    void _close(_SharedSubscription shared) {
+        shared.subscription.then((subscription) => subscription.unsubscribe(), onError: (_) {});
     }
 
     Future<S> _subscribe<S extends Subscription>(pbSubscription.Topic topic,
-                                                 _CreateSubscription<S> newSubscription) {
+                                                 _CreateSubscription<S> newSubscription,
+                                                 {Map<String, String> parameters = const {},
+                                                  String? path = null}) {
         if (_firebase == null) {
             throw StateError('Cannot create a subscription. No Firebase client is provided.');
         }
@@ -288,50 +769,166 @@ class Client {
             throw ArgumentError.value(topic, 'topic', 'Target type `$targetTypeUrl` is unknown.');
         }
         var subscription = _httpClient
-            .postMessage(_endpoints.subscription.create, topic)
+            .postMessage(path ?? _endpoints.subscription.create, topic, parameters: parameters)
             .then(_parseFirebaseSubscription)
-            .then((value) => newSubscription(value, _firebase!));
+            .then((value) => _activate(value, newSubscription));
+        return subscription;
+    }
+
+    /// Creates a new subscription and tracks it until it is unsubscribed.
+    ///
+    /// Once unsubscribed, the subscription is cancelled on the server.
+    ///
+    S _activate<S extends Subscription>(FirebaseSubscription firebaseSubscription,
+                                        _CreateSubscription<S> newSubscription) {
+        late S subscription;
+        subscription = newSubscription(firebaseSubscription,
+                                       _firebase!,
+                                       () => _deactivate(subscription));
+        _activeSubscriptions.add(subscription);
+        _activeClients.add(this);
         return subscription;
     }
 
+    void _deactivate(Subscription subscription) {
+        if (!_activeSubscriptions.remove(subscription)) {
+            return;
+        }
+        _cancel(subscription.subscription);
+        if (_activeSubscriptions.isEmpty) {
+            _activeClients.remove(this);
+        }
+    }
+
     FirebaseSubscription _parseFirebaseSubscription(http.Response response) {
         var firebaseSubscription = FirebaseSubscription();
         parseInto(firebaseSubscription, response.body);
         return firebaseSubscription;
     }
 
-    Stream<S> _execute<S extends GeneratedMessage>(Query query) {
-        var httpResponse = _httpClient.postMessage(_endpoints.query, query);
-        return _queryProcessor.process(httpResponse, query);
+    /// Creates a callback which drops the cached query results of the given type, if the query
+    /// results are cached.
+    void Function()? _cacheInvalidator(String type) {
+        var cache = _queryCache;
+        return cache == null ? null : () => cache.invalidate(type);
     }
 
-    void _refreshSubscriptions() {
-        _activeSubscriptions.forEach(_refreshSubscription);
+    /// Obtains the entity store for the states which are masked by the given [mask].
+    ///
+    /// The masked states are partial, so they are not stored. Otherwise, they would replace
+    /// the full states shared by the other queries and subscriptions.
+    ///
+    EntityStore? _storeFor(FieldMask mask) {
+        return mask.paths.isEmpty ? _entityStore : null;
     }
 
-    void _refreshSubscription(Subscription subscription) {
-        var subscriptionMessage = subscription.subscription;
-        if (subscription.closed) {
-            _cancel(subscriptionMessage);
-            _activeSubscriptions.remove(subscription);
-        } else {
-            _keepUp(subscriptionMessage);
+    /// Sends the [query] to the server, unless an equivalent query is already in flight or its
+    /// results are cached.
+    ///
+    /// The queries are equivalent if they have the same target and response format. Their IDs
+    /// and actor contexts are not compared. All the callers of the equivalent queries obtain
+    /// the results of a single request. The results are delivered once all of them are received.
+    /// Each caller, except for the first one, obtains its own copies of the messages, so that
+    /// the callers do not observe the modifications made by each other. The frozen messages,
+    /// e.g. the ones shared via the [EntityStore], are not copied.
+    ///
+    /// The cache is shared by all the clients, so the cached results are also keyed by the actor.
+    ///
+    Stream<S> _execute<S extends GeneratedMessage>(Query query) {
+        var key = _queryKey(query);
+        var cache = _queryCache;
+        var cacheKey = '${base64Encode(_requests.actor.writeToBuffer())}|$key';
+        var cached = cache?.get<S>(cacheKey);
+        if (cached != null) {
+            return Stream.fromIterable(cached);
         }
-    }
-
-    void _keepUp(pbSubscription.Subscription subscription) {
-        _httpClient.postMessage(_endpoints.subscription.keepUp, subscription);
+        var inFlight = _inFlightQueries[key];
+        if (inFlight != null) {
+            var copies = inFlight.then((results) => results
+                .map((message) => copyOf(message) as S)
+                .toList());
+            return Stream.fromFuture(copies).expand((results) => results);
+        }
+        var type = query.target.type;
+        var generation = cache?.generation(type);
+        var httpResponse = _httpClient.postMessage(_endpoints.query, query);
+        var entities = _queryProcessor.process<S>(httpResponse, query);
+        var store = _storeFor(query.format.fieldMask);
+        if (store != null) {
+            entities = entities.map((entity) => store.put(entity));
+        }
+        var results = entities.toList();
+        _inFlightQueries[key] = results;
+        void complete(_) {
+            if (identical(_inFlightQueries[key], results)) {
+                _inFlightQueries.remove(key);
+            }
+        }
+        results.then(complete, onError: complete);
+        if (cache != null) {
+            results.then((messages) => cache.put(cacheKey, type, generation!, messages),
+                         onError: (_) {});
+        }
+        return Stream.fromFuture(results).expand((results) => results);
     }
 
     void _cancel(pbSubscription.Subscription subscription) {
-        _httpClient.postMessage(_endpoints.subscription.cancel, subscription);
+        _httpClient
+            .postMessage(_endpoints.subscription.cancel, subscription)
+            .then((_) {}, onError: _onSubscriptionError);
     }
 }
 
-/// A function which accepts a future of `FirebaseSubscription` and a firebase client and creates
-/// an instance of [Subscription].
+/// An entity state subscription shared by the holders of equivalent subscriptions.
+class _SharedSubscription {
+
+    final String key;
+
+    /// The shared subscription, which is replaced once the subscription is resumed.
+    Future<StateSubscription> subscription;
+
+    /// The pending resumption of the shared subscription, if any.
+    Future<StateSubscription>? resuming;
+    int holders = 0;
+
+    _SharedSubscription(this.key, this.subscription);
+}
+
+/// Obtains a key which is the same for the subscriptions to equivalent targets with the same
+/// request [parameters].
+///
+/// The order of the IDs and of the composite filters of the [target] does not affect the key.
+///
+String _sharingKey(Target target, Map<String, String> parameters) {
+    var ids = target.filters.idFilter.id
+        .map((id) => base64Encode(id.writeToBuffer()))
+        .toList()
+        ..sort();
+    var filters = target.filters.filter
+        .map((filter) => base64Encode(filter.writeToBuffer()))
+        .toList()
+        ..sort();
+    var options = parameters.entries
+        .map((parameter) => '${parameter.key}=${parameter.value}')
+        .toList()
+        ..sort();
+    return [target.type, ids.join(','), filters.join(','), options.join('&')].join('|');
+}
+
+/// Obtains a key which is the same for the queries with equivalent targets and the same
+/// response format.
+///
+/// The query ID and the actor context are not a part of the key.
+///
+String _queryKey(Query query) {
+    var format = base64Encode(query.format.writeToBuffer());
+    return [_sharingKey(query.target, const {}), format].join('|');
+}
+
+/// A function which accepts a `FirebaseSubscription`, a firebase client, and a callback to invoke
+/// on unsubscribing, and creates an instance of [Subscription].
 typedef _CreateSubscription<S extends Subscription> =
-    S Function(FirebaseSubscription, FirebaseClient);
+    S Function(FirebaseSubscription, FirebaseClient, void Function());
 
 /// A simple or a composite field filter.
 ///
@@ -339,6 +936,13 @@ abstract class FilterOrComposite {
 
     /// Obtains the Protobuf `CompositeFilter` representing this filter.
     CompositeFilter _toProto();
+
+    /// Compiles this filter for the evaluation on the client.
+    ///
+    /// The compiled filter may be used to filter the entity states without a request to
+    /// the server, e.g. the ones held by an [EntityStore].
+    ///
+    FilterEvaluator compile() => FilterEvaluator.of([_toProto()]);
 }
 
 /// A composite field filter.
@@ -436,6 +1040,7 @@ class CommandRequest<M extends GeneratedMessage> {
     final Client _client;
     final Command _command;
     final List<Future<EventSubscription>> _futureSubscriptions = [];
+    final List<_EventObservation> _observations = [];
 
     CommandRequest._(this._client, M command) :
             _command = _client._requests.command().create(command);
@@ -449,10 +1054,21 @@ class CommandRequest<M extends GeneratedMessage> {
     /// Also, when the future created in `post(..)` completes, the all subscriptions created within
     /// the same `CommandRequest` are guaranteed to have completed.
     ///
+    /// If the server supports the [Endpoints.postAndObserve] endpoint, the subscriptions are
+    /// created along with posting the command, in a single request. In this case, the resulting
+    /// future completes only after `post(..)` is called.
+    ///
     Future<EventSubscription<E>> observeEvents<E extends GeneratedMessage>() {
-        var subscription = _client.subscribeToEvents<E>()
-            .where(eq('context.past_message', _commandAsOrigin()))
-            .post();
+        Future<EventSubscription<E>> subscription;
+        if (_client._endpoints.postAndObserve != null) {
+            var observation = _EventObservation<E>(theKnownTypes.typeUrlFrom(E));
+            _observations.add(observation);
+            subscription = observation.subscription;
+        } else {
+            subscription = _client.subscribeToEvents<E>()
+                .where(eq('context.past_message', _commandAsOrigin()))
+                .post();
+        }
         _futureSubscriptions.add(subscription);
         return subscription;
     }
@@ -476,6 +1092,10 @@ class CommandRequest<M extends GeneratedMessage> {
     ///
     /// Returns a future which completes when the request is sent. If there was a network problem,
     /// the future, completes with an error.
+    /// If the `commandOutbox` of [Clients] is set, the command is stored and sent from the outbox.
+    /// The future completes once the command is delivered or, if the backend is unreachable,
+    /// once it is stored to be sent later. If the backend rejects the request itself, e.g. with
+    /// `404 Not Found`, the command is not sent again and [onError] receives the error.
     ///
     /// If the server rejects the command with an error and the [onError] callback is set,
     /// the callback will be triggered with the error. Otherwise, the error is silently ignored.
@@ -486,10 +1106,41 @@ class CommandRequest<M extends GeneratedMessage> {
                 ' command results or call `postAndForget()` instead of `post()` if you observe'
                 ' command results elsewhere.');
         }
+        if (_observations.isNotEmpty) {
+            return _postAndObserve(onError);
+        }
         return Future.wait(_futureSubscriptions)
                      .then((_) => _client._postCommand(_command, onError));
     }
 
+    Future<void> _postAndObserve(CommandErrorCallback? onError) {
+        var eventTypes = _observations.map((observation) => observation.eventType);
+        return _client._postAndObserve(_command, eventTypes).then((response) {
+            var status = response.ack.status;
+            if (status.hasError()) {
+                var error = StateError('Command `${_command.id.uuid}` is not acknowledged: '
+                                       '${status.error.message}');
+                _observations.forEach((observation) => observation.fail(error));
+                if (onError != null) {
+                    onError(status.error);
+                }
+            } else if (response.subscription.length != _observations.length) {
+                var error = StateError('Expected ${_observations.length} subscriptions for '
+                                       'command `${_command.id.uuid}` but received '
+                                       '${response.subscription.length}.');
+                _observations.forEach((observation) => observation.fail(error));
+                response.subscription.forEach((s) => _client._cancel(s.subscription));
+            } else {
+                for (var i = 0; i < _observations.length; i++) {
+                    _observations[i].complete(response.subscription[i], _client);
+                }
+            }
+        }, onError: (Object error, StackTrace stackTrace) {
+            _observations.forEach((observation) => observation.fail(error, stackTrace));
+            return Future<void>.error(error, stackTrace);
+        });
+    }
+
     /// Asynchronously sends this request to the server.
     ///
     /// Fails if there are any event subscriptions to monitor the command execution. Use
@@ -497,6 +1148,10 @@ class CommandRequest<M extends GeneratedMessage> {
     ///
     /// Returns a future which completes when the request is sent. If there was a network problem,
     /// the future, completes with an error.
+    /// If the `commandOutbox` of [Clients] is set, the command is stored and sent from the outbox.
+    /// The future completes once the command is delivered or, if the backend is unreachable,
+    /// once it is stored to be sent later. If the backend rejects the request itself, e.g. with
+    /// `404 Not Found`, the command is not sent again and [onError] receives the error.
     ///
     /// If the server rejects the command with an error and the [onError] callback is set,
     /// the callback will be triggered with the error. Otherwise, the error is silently ignored.
@@ -509,6 +1164,27 @@ class CommandRequest<M extends GeneratedMessage> {
     }
 }
 
+/// An event subscription which is created along with posting a command.
+class _EventObservation<E extends GeneratedMessage> {
+
+    final String eventType;
+    final Completer<EventSubscription<E>> _subscription = Completer();
+
+    _EventObservation(this.eventType);
+
+    Future<EventSubscription<E>> get subscription => _subscription.future;
+
+    void complete(FirebaseSubscription subscription, Client client) {
+        _subscription.complete(client._activate(subscription, (s, d, onUnsubscribe) =>
+            EventSubscription.of(s, d, onUnsubscribe: onUnsubscribe)
+        ));
+    }
+
+    void fail(Object error, [StackTrace? stackTrace]) {
+        _subscription.completeError(error, stackTrace);
+    }
+}
+
 /// A callback which notifies the user about an error when posting a command.
 ///
 /// A server may reject a command for several reasons. For example, a command type may not be
@@ -519,6 +1195,14 @@ class CommandRequest<M extends GeneratedMessage> {
 ///
 typedef CommandErrorCallback = void Function(pbError.Error error);
 
+/// A callback which notifies the user about an error of a request sent in the background to keep
+/// up or to cancel a subscription.
+///
+/// Such requests fail, for example, while the backend is unreachable. The subscriptions are kept
+/// up again on the next attempt, and the cancelled ones expire on the server.
+///
+typedef SubscriptionErrorCallback = void Function(Object error, StackTrace stackTrace);
+
 /// A request to query the server for data.
 ///
 class QueryRequest<M extends GeneratedMessage> {
@@ -625,8 +1309,11 @@ class StateSubscriptionRequest<M extends GeneratedMessage> {
     final Type _type;
     final Set<Object> _ids = Set();
     final Set<CompositeFilter> _filters = Set();
+    final bool _withSnapshot;
+    Duration? _conflationInterval;
 
-    StateSubscriptionRequest._(this._client, this._type);
+    StateSubscriptionRequest._(this._client, this._type, {bool withSnapshot = false}) :
+            _withSnapshot = withSnapshot;
 
     /// Adds field filters to the subscription.
     ///
@@ -653,18 +1340,72 @@ class StateSubscriptionRequest<M extends GeneratedMessage> {
         return this;
     }
 
+    /// Limits the rate of updates of a single entity to one per [interval].
+    ///
+    /// By default, the server delivers each change of a matching entity. If an entity changes
+    /// faster than the client can process the changes, the intermediate states are of no use.
+    ///
+    /// With this option, the server delivers the first change right away and holds back
+    /// the changes arriving during the following [interval]. When the interval ends, only
+    /// the latest state of each changed entity is delivered.
+    ///
+    /// The interval is rounded down to whole milliseconds.
+    ///
+    StateSubscriptionRequest<M> conflate(Duration interval) {
+        ArgumentError.checkNotNull(interval, 'interval');
+        if (interval.inMilliseconds <= 0) {
+            throw ArgumentError('Invalid value of conflation interval = $interval');
+        }
+        _conflationInterval = interval;
+        return this;
+    }
+
     /// Asynchronously sends this request to the server.
     ///
     /// The subscription is guaranteed to have been created on server when the resulting future
     /// completes.
     ///
+    /// The requests with equivalent topics and options share a single subscription, which is
+    /// cancelled on the server when all of its holders unsubscribe. Live queries are never
+    /// shared, since each of them starts with its own snapshot of the entities.
+    ///
     Future<StateSubscription<M>> post() {
+        String? path = null;
+        if (_withSnapshot) {
+            path = _client._endpoints.subscription.liveQuery;
+            if (path == null) {
+                throw StateError('Cannot create a live query. '
+                                 'The `liveQuery` endpoint is not configured.');
+            }
+        }
         var topic = _client._requests.topic().withFilters(_type, ids: _ids, filters: _filters);
         var builderInfo = theKnownTypes.findBuilderInfo(theKnownTypes.typeUrlFrom(_type))!;
-        return _client._subscribeToStateUpdates(topic, builderInfo);
+        var parameters = <String, String>{};
+        if (_conflationInterval != null) {
+            parameters[_conflationIntervalParameter] = '${_conflationInterval!.inMilliseconds}';
+        }
+        if (_withSnapshot) {
+            return _client._subscribeToStateUpdates(topic,
+                                                    builderInfo,
+                                                    parameters: parameters,
+                                                    path: path);
+        }
+        return _client._subscribeShared(topic, builderInfo, parameters);
     }
 }
 
+/// The request parameter which sets the interval, in milliseconds, of update conflation.
+const _conflationIntervalParameter = 'conflation-interval';
+
+/// The request parameter which holds the latest version of entity states seen by a client.
+const _seenVersionParameter = 'seen-version';
+
+/// The request parameter which limits the number of events kept in a subscription node.
+const _retentionCountParameter = 'retention-count';
+
+/// The request parameter which limits the age, in seconds, of events kept in a subscription node.
+const _retentionAgeParameter = 'retention-age';
+
 /// A request to subscribe to events.
 ///
 class EventSubscriptionRequest<M extends GeneratedMessage> {
@@ -672,6 +1413,8 @@ class EventSubscriptionRequest<M extends GeneratedMessage> {
     final Client _client;
     final Type _type;
     final List<CompositeFilter> _filers = [];
+    int? _retentionCount;
+    Duration? _retentionAge;
 
     EventSubscriptionRequest._(this._client, this._type);
 
@@ -688,6 +1431,39 @@ class EventSubscriptionRequest<M extends GeneratedMessage> {
         return this;
     }
 
+    /// Limits the number of events kept in the subscription on the server.
+    ///
+    /// By default, the server keeps all the events which match the subscription, so that
+    /// the listeners which join late receive all of them. Long-living subscriptions may
+    /// accumulate many events, which slows down such listeners.
+    ///
+    /// With this option, the server periodically removes the oldest events, so that at most
+    /// [count] of them remain.
+    ///
+    EventSubscriptionRequest<M> retainLast(int count) {
+        ArgumentError.checkNotNull(count, 'count');
+        if (count <= 0) {
+            throw ArgumentError('Invalid value of retained event count = $count');
+        }
+        _retentionCount = count;
+        return this;
+    }
+
+    /// Limits the age of the events kept in the subscription on the server.
+    ///
+    /// The server periodically removes the events which happened earlier than [age] ago.
+    ///
+    /// The age is rounded down to whole seconds.
+    ///
+    EventSubscriptionRequest<M> retainFor(Duration age) {
+        ArgumentError.checkNotNull(age, 'age');
+        if (age.inSeconds <= 0) {
+            throw ArgumentError('Invalid value of retained event age = $age');
+        }
+        _retentionAge = age;
+        return this;
+    }
+
     /// Asynchronously sends this request to the server.
     ///
     /// The subscription is guaranteed to have been created on server when the resulting future
@@ -695,7 +1471,18 @@ class EventSubscriptionRequest<M extends GeneratedMessage> {
     ///
     Future<EventSubscription<M>> post() {
         var topic = _client._requests.topic().withFilters(_type, filters: _filers);
-        return _client._subscribeToEvents(topic);
+        return _client._subscribeToEvents(topic, parameters: _retentionParameters());
+    }
+
+    Map<String, String> _retentionParameters() {
+        var parameters = <String, String>{};
+        if (_retentionCount != null) {
+            parameters[_retentionCountParameter] = '$_retentionCount';
+        }
+        if (_retentionAge != null) {
+            parameters[_retentionAgeParameter] = '${_retentionAge!.inSeconds}';
+        }
+        return parameters;
     }
 }
 
@@ -707,7 +1494,16 @@ enum QueryMode {
 
     /// HTTP responses received from the backend are references in a Firebase database to where
     /// the actual query responses are.
-    FIREBASE
+    FIREBASE,
+
+    /// HTTP responses received from the backend are `AdaptiveQueryResponse`s, which contain
+    /// either the query response itself or a reference in a Firebase database to where it is.
+    ///
+    /// The backend chooses the delivery depending on the size of the query result, so that small
+    /// results are not written to the database at all. Point [Endpoints.query] to an endpoint
+    /// which serves the adaptive responses to use this mode.
+    ///
+    ADAPTIVE
 }
 
 /// URL paths to which the client should send requests.
@@ -716,11 +1512,31 @@ class Endpoints {
 
     final String query;
     final String command;
+
+    /// The path which accepts a command along with the event types to observe.
+    ///
+    /// If set, the commands with event observers are posted via this path. Otherwise, the event
+    /// subscriptions are created before posting the command, with a separate request each.
+    ///
+    /// This endpoint is not a part of the standard Spine Web API and is `null` by default.
+    ///
+    final String? postAndObserve;
+
+    /// The path which accepts several commands at once.
+    ///
+    /// If set, the commands stored in the command outbox of [Clients] are sent via this path in
+    /// batches. Otherwise, the stored commands are sent one by one via the [command] path.
+    ///
+    /// This endpoint is not a part of the standard Spine Web API and is `null` by default.
+    ///
+    final String? commandBatch;
     late SubscriptionEndpoints _subscription;
 
     Endpoints({
         this.query = 'query',
         this.command = 'command',
+        this.postAndObserve = null,
+        this.commandBatch = null,
         SubscriptionEndpoints? subscription
     }) {
         ArgumentError.checkNotNull(query, 'query');
@@ -743,10 +1559,36 @@ class SubscriptionEndpoints {
     final String keepUp;
     final String cancel;
 
+    /// The path which creates live queries.
+    ///
+    /// This endpoint is not a part of the standard Spine Web API and is `null` by default.
+    ///
+    /// See [Client.liveQuery].
+    ///
+    final String? liveQuery;
+
+    /// The path which resumes entity state subscriptions.
+    ///
+    /// This endpoint is not a part of the standard Spine Web API and is `null` by default.
+    ///
+    /// See [Client.resume].
+    ///
+    final String? resume;
+
+    /// The path which prolongs the lifetime of several subscriptions at once.
+    ///
+    /// This endpoint is not a part of the standard Spine Web API and is `null` by default. If
+    /// not set, the subscriptions are kept up one by one via the [keepUp] endpoint.
+    ///
+    final String? keepUpAll;
+
     SubscriptionEndpoints({
         this.create = 'subscription/create',
         this.keepUp = 'subscription/keep-up',
-        this.cancel = 'subscription/cancel'
+        this.cancel = 'subscription/cancel',
+        this.liveQuery = null,
+        this.resume = null,
+        this.keepUpAll = null
     }) {
         ArgumentError.checkNotNull(create, 'subscription.create');
         ArgumentError.checkNotNull(keepUp, 'subscription.keepUp');
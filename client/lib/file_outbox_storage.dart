@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:convert';
+import 'dart:io';
+
+import 'package:spine_client/spine/core/command.pb.dart';
+import 'package:spine_client/src/command_outbox.dart';
+
+export 'package:spine_client/src/command_outbox.dart' show OutboxStorage;
+
+const _base64 = Base64Codec();
+
+/// An [OutboxStorage] which keeps the commands in a file.
+///
+/// Each command is written on a separate line in the binary format encoded in Base64, so that
+/// the commands are restored without the knowledge of their types. The file is replaced
+/// atomically: the commands are written to a temporary file, which is then renamed.
+///
+/// This storage relies on `dart:io`, and thus is not available on the web.
+///
+/// Example:
+/// ```dart
+/// import 'package:spine_client/file_outbox_storage.dart';
+///
+/// var clients = Clients('https://example.org/',
+///                       commandOutbox: FileOutboxStorage('${appDir.path}/outbox'),
+///                       typeRegistries: [myTypes.types()]);
+/// ```
+///
+class FileOutboxStorage implements OutboxStorage {
+
+    final File _file;
+    final File _temp;
+
+    /// Creates a new storage which keeps the commands in the file at the given [path].
+    FileOutboxStorage(String path)
+        : _file = File(path),
+          _temp = File('$path.tmp') {
+        ArgumentError.checkNotNull(path, 'path');
+    }
+
+    @override
+    Future<List<Command>> load() async {
+        if (!await _file.exists()) {
+            return [];
+        }
+        var lines = await _file.readAsLines();
+        return lines
+            .where((line) => line.isNotEmpty)
+            .map((line) => Command.fromBuffer(_base64.decode(line)))
+            .toList();
+    }
+
+    @override
+    Future<void> store(List<Command> commands) async {
+        var content = StringBuffer();
+        for (var command in commands) {
+            content.writeln(_base64.encode(command.writeToBuffer()));
+        }
+        await _temp.writeAsString(content.toString(), flush: true);
+        await _temp.rename(_file.path);
+    }
+}
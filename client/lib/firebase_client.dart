@@ -28,6 +28,10 @@
 ///
 /// This class is a platform-agnostic interface. Implementations are platform-specific.
 ///
+/// The streams returned by a client listen to the database only while they are listened to.
+/// Once a stream subscription is cancelled, the implementations should detach the database
+/// listener, so that no more data is received for it.
+///
 abstract class FirebaseClient {
 
     /// Obtains children of the database node under a given path.
@@ -68,3 +72,61 @@ abstract class FirebaseClient {
     ///
     Stream<String> childRemoved(String path);
 }
+
+/// A [FirebaseClient] which can also deliver the node values already decoded.
+///
+/// The Firebase SDKs decode the node values into maps anyway. Delivering the maps as is saves
+/// encoding them into JSON strings only to be decoded back by the Spine client. If the database
+/// client implements this interface, the Spine client uses the methods below instead of
+/// the string-based ones.
+///
+/// The node values which are JSON strings should be decoded by the implementations.
+///
+abstract class StructuredFirebaseClient extends FirebaseClient {
+
+    /// Obtains children of the database node under a given path decoded into maps.
+    ///
+    /// See [get].
+    ///
+    Stream<Map<String, dynamic>> getMaps(String path);
+
+    /// Obtains the "childAdded" event stream of the node under a given path with the values
+    /// decoded into maps.
+    ///
+    /// See [childAdded].
+    ///
+    Stream<Map<String, dynamic>> childAddedMaps(String path);
+
+    /// Obtains the "childChanged" event stream of the node under a given path with the values
+    /// decoded into maps.
+    ///
+    /// See [childChanged].
+    ///
+    Stream<Map<String, dynamic>> childChangedMaps(String path);
+
+    /// Obtains the "childRemoved" event stream of the node under a given path with the values
+    /// decoded into maps.
+    ///
+    /// See [childRemoved].
+    ///
+    Stream<Map<String, dynamic>> childRemovedMaps(String path);
+}
+
+/// A [FirebaseClient] which can read all the children of a node at once.
+///
+/// Reading a node at once takes a single request and no listener is left attached to the node
+/// afterwards. If the database client implements this interface, the Spine client uses it to
+/// read query results.
+///
+abstract class BulkReadFirebaseClient extends FirebaseClient {
+
+    /// Reads all the children of the database node under a given path.
+    ///
+    /// Returns the child values by the child keys. The values are either JSON strings or JSON
+    /// objects decoded into maps. If there is no such node, returns an empty map.
+    ///
+    /// If Firebase returns the node as an array, since its keys look like integers, the children
+    /// should be keyed by the indices padded with zeros, so that the keys keep their order.
+    ///
+    Future<Map<String, Object>> readChildren(String path);
+}
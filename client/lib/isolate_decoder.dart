@@ -0,0 +1,214 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:async';
+import 'dart:isolate';
+
+import 'package:protobuf/protobuf.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/message_decoder.dart';
+
+export 'package:spine_client/src/message_decoder.dart' show MessageDecoder;
+
+/// A [MessageDecoder] which parses large payloads on a worker isolate.
+///
+/// Parsing thousands of entity states on the UI isolate of a Flutter application drops frames.
+/// This decoder sends the JSON strings to a worker isolate, which parses them and sends back
+/// the messages encoded in the binary format. Decoding the binary format on the calling isolate
+/// is much cheaper than parsing JSON.
+///
+/// The payloads smaller than the `threshold` number of characters are parsed inline, as
+/// the round trip to the worker costs more than parsing them. So are the values which are already
+/// decoded into JSON objects, e.g. by a `StructuredFirebaseClient`, since copying them to
+/// the worker costs about as much as parsing them.
+///
+/// This decoder relies on `dart:isolate`, and thus is not available on the web.
+///
+/// Example:
+/// ```dart
+/// import 'package:spine_client/isolate_decoder.dart';
+/// import './types.dart' as myTypes;
+///
+/// List<dynamic> typeRegistries() => [myTypes.types()];
+///
+/// var decoder = await IsolateDecoder.spawn(typeRegistries);
+/// var clients = Clients('https://example.org/',
+///                       decoder: decoder,
+///                       typeRegistries: typeRegistries());
+/// ```
+///
+class IsolateDecoder implements MessageDecoder {
+
+    static const _defaultThreshold = 64 * 1024;
+
+    final Isolate _isolate;
+    final SendPort _requests;
+    final ReceivePort _responses;
+    final int _threshold;
+    final Map<int, Completer<List<TransferableTypedData>>> _pending = Map();
+    int _nextRequest = 0;
+    bool _closed = false;
+
+    IsolateDecoder._(this._isolate, this._requests, this._responses, this._threshold) {
+        _responses.listen(_complete);
+    }
+
+    /// Starts a new worker isolate.
+    ///
+    /// The worker registers the types obtained from the [typeRegistries] function. The function
+    /// is invoked on the worker, and thus must be a top-level or a static function.
+    ///
+    /// The payloads smaller than the [threshold] number of characters are parsed inline.
+    ///
+    static Future<IsolateDecoder> spawn(List<dynamic> Function() typeRegistries,
+                                        {int threshold = _defaultThreshold}) async {
+        ArgumentError.checkNotNull(typeRegistries, 'typeRegistries');
+        var setup = ReceivePort();
+        var isolate = await Isolate.spawn(_work, _WorkerSetup(setup.sendPort, typeRegistries));
+        var requests = await setup.first as SendPort;
+        var responses = ReceivePort();
+        requests.send(responses.sendPort);
+        return IsolateDecoder._(isolate, requests, responses, threshold);
+    }
+
+    @override
+    Future<List<T>> decode<T extends GeneratedMessage>(String typeUrl, List<Object> values) {
+        if (!_offloaded(values)) {
+            return Future.sync(() => decodeInline<T>(typeUrl, values));
+        }
+        if (_closed) {
+            return Future.error(StateError('The decoder is closed.'));
+        }
+        var builder = theKnownTypes.findBuilderInfo(typeUrl);
+        if (builder == null) {
+            return Future.error(
+                ArgumentError.value(typeUrl, 'typeUrl', 'Type `$typeUrl` is unknown.')
+            );
+        }
+        var id = _nextRequest++;
+        var completer = Completer<List<TransferableTypedData>>();
+        _pending[id] = completer;
+        _requests.send(_Request(id, typeUrl, values.cast<String>()));
+        return completer.future.then((encoded) => encoded
+            .map((bytes) => builder.createEmptyInstance!()
+                ..mergeFromBuffer(bytes.materialize().asUint8List()))
+            .cast<T>()
+            .toList());
+    }
+
+    /// Stops the worker isolate.
+    ///
+    /// The pending requests fail. The small payloads are still parsed inline.
+    ///
+    void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _isolate.kill(priority: Isolate.immediate);
+        _responses.close();
+        for (var completer in _pending.values) {
+            completer.completeError(StateError('The decoder is closed.'));
+        }
+        _pending.clear();
+    }
+
+    bool _offloaded(List<Object> values) {
+        var size = 0;
+        for (var value in values) {
+            if (value is! String) {
+                return false;
+            }
+            size += value.length;
+        }
+        return size >= _threshold;
+    }
+
+    void _complete(dynamic message) {
+        var response = message as _Response;
+        var completer = _pending.remove(response.id);
+        if (completer == null) {
+            return;
+        }
+        var error = response.error;
+        if (error != null) {
+            completer.completeError(FormatException(error));
+        } else {
+            completer.complete(response.messages);
+        }
+    }
+}
+
+class _WorkerSetup {
+
+    final SendPort setup;
+    final List<dynamic> Function() typeRegistries;
+
+    _WorkerSetup(this.setup, this.typeRegistries);
+}
+
+class _Request {
+
+    final int id;
+    final String typeUrl;
+    final List<String> values;
+
+    _Request(this.id, this.typeUrl, this.values);
+}
+
+class _Response {
+
+    final int id;
+    final List<TransferableTypedData>? messages;
+    final String? error;
+
+    _Response(this.id, this.messages, this.error);
+}
+
+/// The entry point of the worker isolate.
+Future<void> _work(_WorkerSetup setup) async {
+    theKnownTypes.registerAll(setup.typeRegistries());
+    var requests = ReceivePort();
+    setup.setup.send(requests.sendPort);
+    SendPort? responses;
+    await for (var message in requests) {
+        if (message is SendPort) {
+            responses = message;
+            continue;
+        }
+        var request = message as _Request;
+        _Response response;
+        try {
+            var messages = decodeInline(request.typeUrl, request.values)
+                .map((decoded) => TransferableTypedData.fromList([decoded.writeToBuffer()]))
+                .toList();
+            response = _Response(request.id, messages, null);
+        } catch (e) {
+            response = _Response(request.id, null, '$e');
+        }
+        responses!.send(response);
+    }
+}
@@ -85,6 +85,10 @@ library spine_client;
 
 export 'client.dart';
 export 'firebase_client.dart';
+export 'src/command_outbox.dart' show OutboxStorage, MemoryOutboxStorage;
+export 'src/entity_store.dart' show EntityStore;
+export 'src/filter_evaluator.dart' show FilterEvaluator;
+export 'src/message_decoder.dart' show MessageDecoder, InlineDecoder;
 export 'spine/core/tenant_id.pb.dart';
 export 'spine/core/user_id.pb.dart';
 export 'spine/time/time.pb.dart';
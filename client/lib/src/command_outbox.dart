@@ -0,0 +1,223 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:async';
+
+import 'package:spine_client/spine/core/ack.pb.dart';
+import 'package:spine_client/spine/core/command.pb.dart';
+
+/// A durable storage of the commands which are not yet delivered to the server.
+///
+/// The default implementation for the VM is `FileOutboxStorage`. Implement this interface to keep
+/// the commands elsewhere, e.g. in the browser local storage or in an application database.
+///
+abstract class OutboxStorage {
+
+    /// Loads the stored commands in the order in which they were stored.
+    Future<List<Command>> load();
+
+    /// Replaces the stored commands with the given ones.
+    ///
+    /// The returned future must complete only once the commands are stored durably.
+    ///
+    Future<void> store(List<Command> commands);
+}
+
+/// An [OutboxStorage] which keeps the commands in memory.
+///
+/// The commands do not survive a restart of the application. Still, the commands posted while
+/// the server is unreachable are delivered once it is reachable again.
+///
+class MemoryOutboxStorage implements OutboxStorage {
+
+    List<Command> _commands = [];
+
+    @override
+    Future<List<Command>> load() => Future.value(List.of(_commands));
+
+    @override
+    Future<void> store(List<Command> commands) {
+        _commands = List.of(commands);
+        return Future.value();
+    }
+}
+
+/// Sends the given commands to the server in the given order.
+///
+/// Returns the acknowledgements of the delivered commands. If the server becomes unreachable,
+/// the acknowledgements of the commands delivered before that are returned, so that the rest of
+/// the commands are sent again later.
+///
+typedef CommandSender = Future<List<Ack>> Function(List<Command> commands);
+
+/// A queue of the commands which are delivered to the server in the order of posting.
+///
+/// A posted command is stored before it is sent. The commands which cannot be delivered, because
+/// the server is unreachable, are kept in the [OutboxStorage] and sent again after the retry
+/// period or upon the next [flush]. The stored commands are loaded when the outbox is created and
+/// sent along with the newly posted ones.
+///
+/// The queued commands are sent in batches of at most the given size. A command is removed from
+/// the queue once it is acknowledged by the server, even if the acknowledgement carries an error,
+/// as sending it again would not change the outcome.
+///
+/// The commands are identified by their IDs. A command which is already queued is not queued
+/// again.
+///
+class CommandOutbox {
+
+    final OutboxStorage _storage;
+    final CommandSender _send;
+    final int _batchSize;
+    final Duration _retryPeriod;
+    final List<_Entry> _queue = [];
+    final Set<String> _ids = Set();
+    late final Future<void> _loaded;
+    Future<void> _persisted = Future.value();
+    Future<void>? _flushing;
+    Timer? _retry;
+    bool _closed = false;
+
+    CommandOutbox(this._storage, this._send, this._batchSize, this._retryPeriod) {
+        ArgumentError.checkNotNull(_storage, 'storage');
+        ArgumentError.checkNotNull(_send, 'send');
+        if (_batchSize <= 0) {
+            throw ArgumentError.value(_batchSize, 'batchSize', 'Batch size must be positive.');
+        }
+        if (_retryPeriod <= Duration.zero) {
+            throw ArgumentError.value(_retryPeriod, 'retryPeriod',
+                                      'Retry period must be positive.');
+        }
+        _loaded = _storage.load().then((commands) {
+            for (var command in commands) {
+                if (_ids.add(command.id.uuid)) {
+                    _queue.add(_Entry(command, null));
+                }
+            }
+            if (_queue.isNotEmpty) {
+                flush();
+            }
+        });
+    }
+
+    /// The number of the commands which are not yet delivered.
+    int get length => _queue.length;
+
+    /// Queues the given command and starts sending the queued commands.
+    ///
+    /// The [onAck] callback receives the acknowledgement of the command once it is delivered.
+    ///
+    /// Returns a future which completes when the command is either delivered or stored until
+    /// the server is reachable again.
+    ///
+    Future<void> post(Command command, void Function(Ack) onAck) async {
+        await _loaded;
+        if (_closed) {
+            throw StateError('The command outbox is closed.');
+        }
+        if (!_ids.add(command.id.uuid)) {
+            return;
+        }
+        var entry = _Entry(command, onAck);
+        _queue.add(entry);
+        await _persist();
+        flush();
+        return entry.settled.future;
+    }
+
+    /// Sends the queued commands to the server.
+    ///
+    /// Returns a future which completes when all the commands are delivered or the server turns
+    /// out to be unreachable.
+    ///
+    Future<void> flush() {
+        return _flushing ??= _flush().whenComplete(() => _flushing = null);
+    }
+
+    /// Stops retrying the delivery.
+    ///
+    /// The queued commands remain stored and are sent by the next outbox created with
+    /// the same storage.
+    ///
+    void close() {
+        _closed = true;
+        _retry?.cancel();
+        _retry = null;
+    }
+
+    Future<void> _flush() async {
+        await _loaded;
+        _retry?.cancel();
+        _retry = null;
+        while (_queue.isNotEmpty && !_closed) {
+            var batch = _queue.take(_batchSize).toList();
+            var acks = await _send(batch.map((entry) => entry.command).toList());
+            var delivered = acks.length < batch.length ? acks.length : batch.length;
+            _queue.removeRange(0, delivered);
+            for (var i = 0; i < delivered; i++) {
+                var entry = batch[i];
+                _ids.remove(entry.command.id.uuid);
+                entry.onAck?.call(acks[i]);
+                entry.settle();
+            }
+            if (delivered > 0) {
+                await _persist();
+            }
+            if (delivered < batch.length) {
+                _queue.forEach((entry) => entry.settle());
+                if (!_closed) {
+                    _retry = Timer(_retryPeriod, flush);
+                }
+                return;
+            }
+        }
+    }
+
+    /// Stores the queued commands after the previous store completes.
+    Future<void> _persist() {
+        _persisted = _persisted.catchError((_) {}).then((_) {
+            var commands = _queue.map((entry) => entry.command).toList();
+            return _storage.store(commands);
+        });
+        return _persisted;
+    }
+}
+
+/// A queued command.
+class _Entry {
+
+    final Command command;
+    final void Function(Ack)? onAck;
+    final Completer<void> settled = Completer();
+
+    _Entry(this.command, this.onAck);
+
+    void settle() {
+        if (!settled.isCompleted) {
+            settled.complete();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:collection';
+import 'dart:convert';
+
+import 'package:protobuf/protobuf.dart';
+import 'package:spine_client/src/known_types.dart';
+
+/// A store of entity states shared by the queries and subscriptions of the clients.
+///
+/// The states are keyed by the type URL and the entity ID, which is the first field of an entity
+/// state. When a state equal to the stored one is received, the stored instance is returned
+/// instead, so that the same entity is held in memory once regardless of the number of queries
+/// and subscriptions which deliver it. A changed state replaces the stored one.
+///
+/// The states received by the queries and subscriptions with a field mask are partial. They are
+/// not stored, so that they do not replace the full states.
+///
+/// The stored states are frozen, as they are shared. To modify a state, make a copy of it, e.g.
+/// via `deepCopy()` or `rebuild(...)`.
+///
+/// The store holds at most the given number of states. The least recently received or read
+/// states are evicted first.
+///
+/// Example:
+/// ```dart
+/// var store = EntityStore();
+/// var clients = Clients('https://example.org/', entityStore: store, ...);
+/// // ...
+/// var task = store.find<Task>(taskId);
+/// ```
+///
+class EntityStore {
+
+    final int _capacity;
+    final LinkedHashMap<String, GeneratedMessage> _entities = LinkedHashMap();
+
+    /// Creates a new store which holds at most [capacity] entity states.
+    EntityStore({int capacity = 10000}) : _capacity = capacity {
+        if (capacity <= 0) {
+            throw ArgumentError.value(capacity, 'capacity', 'Capacity must be positive.');
+        }
+    }
+
+    /// The number of the stored entity states.
+    int get length => _entities.length;
+
+    /// Obtains the stored state of the entity of type [T] with the given ID.
+    ///
+    /// Returns `null` if the state is not stored.
+    ///
+    T? find<T extends GeneratedMessage>(Object id) {
+        ArgumentError.checkNotNull(id, 'id');
+        var key = _key(theKnownTypes.typeUrlFrom(T), id);
+        var entity = _entities.remove(key);
+        if (entity == null) {
+            return null;
+        }
+        _entities[key] = entity;
+        return entity as T;
+    }
+
+    /// Stores the given entity state.
+    ///
+    /// Returns the shared instance of the state, which is either the previously stored equal
+    /// state or the given state frozen.
+    ///
+    T put<T extends GeneratedMessage>(T entity) {
+        var key = _keyOf(entity);
+        var stored = _entities.remove(key);
+        if (stored != null && stored == entity) {
+            _entities[key] = stored;
+            return stored as T;
+        }
+        entity.freeze();
+        _entities[key] = entity;
+        if (_entities.length > _capacity) {
+            _entities.remove(_entities.keys.first);
+        }
+        return entity;
+    }
+
+    /// Removes the state of the entity with the same ID as the given one.
+    void remove(GeneratedMessage entity) {
+        _entities.remove(_keyOf(entity));
+    }
+
+    static String _keyOf(GeneratedMessage entity) {
+        var idField = entity.info_.byIndex.first;
+        var id = entity.getField(idField.tagNumber) as Object;
+        return _key(theKnownTypes.typeUrlOf(entity), id);
+    }
+
+    static String _key(String typeUrl, Object id) {
+        var idValue = id is GeneratedMessage
+                      ? base64Encode(id.writeToBuffer())
+                      : id.toString();
+        return '$typeUrl|$idValue';
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+/// The field of a subscription update which holds the key of the updated node child.
+const _keyField = '@key';
+
+/// The field of a subscription update which holds the version of the entity state.
+const _versionField = '@version';
+
+/// The field of a subscription update which marks the tombstone of a removed entity.
+const _removedField = '@removed';
+
+/// A kind of change of an entity delivered by a subscription.
+enum EntityChange {
+    added,
+    changed,
+    removed
+}
+
+/// Tracks the versions of the entity states delivered by a subscription.
+///
+/// The server may stamp each entity state written to a subscription node with the node child key
+/// and the version of the state. The updates which carry a version not greater than the one
+/// already seen for the same child are stale or duplicate, and are not delivered.
+///
+/// An update is either a raw JSON string or a JSON object already decoded into a map. The stamps
+/// are looked up in the raw JSON without parsing it, so that the dropped updates are never
+/// parsed. The updates without the stamps are always delivered.
+///
+/// The server may also write a tombstone in place of a removed entity. A tombstone is stamped in
+/// the same way and is marked with the `@removed` field.
+///
+class EntityVersions {
+
+    final Map<String, int> _versions;
+    int? _latest;
+
+    EntityVersions() : _versions = Map();
+
+    /// Creates a copy of the given versions.
+    EntityVersions.from(EntityVersions other)
+        : _versions = Map.of(other._versions),
+          _latest = other._latest;
+
+    /// The greatest version seen so far or `null` if no versions have been seen.
+    int? get latest => _latest;
+
+    /// Determines the change of an entity to deliver for the given JSON update.
+    ///
+    /// The [reported] change is the one observed in the subscription node. For the stamped
+    /// updates, the change is determined by the versions seen before: a tombstone removes
+    /// a known entity, and a state of an unknown entity adds it. Returns `null` if the update
+    /// should not be delivered.
+    ///
+    EntityChange? classify(Object json, EntityChange reported) {
+        var key = _stringField(json, _keyField);
+        var version = _intField(json, _versionField);
+        if (key == null || version == null) {
+            return reported;
+        }
+        var tombstone = _isTrue(json, _removedField);
+        if (reported == EntityChange.removed) {
+            return tombstone || _versions.remove(key) == null ? null : EntityChange.removed;
+        }
+        var seen = _versions[key];
+        if (seen != null && seen >= version) {
+            return null;
+        }
+        _see(version);
+        if (tombstone) {
+            return _versions.remove(key) == null ? null : EntityChange.removed;
+        }
+        _versions[key] = version;
+        return seen == null ? EntityChange.added : EntityChange.changed;
+    }
+
+    void _see(int version) {
+        if (_latest == null || _latest! < version) {
+            _latest = version;
+        }
+    }
+}
+
+/// Obtains the node child key stamped into the given JSON update by the server.
+///
+/// Returns `null` if the update is not stamped.
+///
+String? entityKey(Object json) => _stringField(json, _keyField);
+
+/// Checks if the value of the given field in the JSON object is `true`.
+///
+/// For a raw JSON string, the first occurrence of the field is checked.
+///
+bool _isTrue(Object json, String field) {
+    if (json is Map) {
+        return json[field] == true;
+    }
+    var string = json as String;
+    var start = _valueStart(string, field);
+    return start >= 0 && string.startsWith('true', start);
+}
+
+/// Finds the value of the given string field in the JSON object.
+///
+/// For a raw JSON string, the first occurrence of the field is looked up, and only the values
+/// without escape sequences are supported. Returns `null` if there is no such field.
+///
+String? _stringField(Object json, String field) {
+    if (json is Map) {
+        var value = json[field];
+        return value is String ? value : null;
+    }
+    var string = json as String;
+    var start = _valueStart(string, field);
+    if (start < 0 || start >= string.length || string[start] != '"') {
+        return null;
+    }
+    var end = string.indexOf('"', start + 1);
+    if (end < 0) {
+        return null;
+    }
+    var value = string.substring(start + 1, end);
+    return value.contains('\\') ? null : value;
+}
+
+/// Finds the value of the given integer field in the JSON object.
+///
+/// For a raw JSON string, the first occurrence of the field is looked up. Returns `null` if there
+/// is no such field.
+///
+int? _intField(Object json, String field) {
+    if (json is Map) {
+        var value = json[field];
+        return value is num ? value.toInt() : null;
+    }
+    var string = json as String;
+    var start = _valueStart(string, field);
+    if (start < 0) {
+        return null;
+    }
+    var end = start;
+    while (end < string.length && _isDigit(string.codeUnitAt(end))) {
+        end++;
+    }
+    return end == start
+           ? null
+           : int.tryParse(string.substring(start, end));
+}
+
+/// Finds the index at which the value of the given field starts.
+///
+/// Returns `-1` if there is no such field.
+///
+int _valueStart(String json, String field) {
+    var quoted = '"$field"';
+    var index = json.indexOf(quoted);
+    if (index < 0) {
+        return -1;
+    }
+    index += quoted.length;
+    while (index < json.length && _isWhitespace(json.codeUnitAt(index))) {
+        index++;
+    }
+    if (index >= json.length || json[index] != ':') {
+        return -1;
+    }
+    index++;
+    while (index < json.length && _isWhitespace(json.codeUnitAt(index))) {
+        index++;
+    }
+    return index;
+}
+
+bool _isDigit(int codeUnit) => codeUnit >= 0x30 && codeUnit <= 0x39;
+
+bool _isWhitespace(int codeUnit) =>
+    codeUnit == 0x20 || codeUnit == 0x0A || codeUnit == 0x0D || codeUnit == 0x09;
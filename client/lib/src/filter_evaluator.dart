@@ -0,0 +1,256 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:fixnum/fixnum.dart';
+import 'package:protobuf/protobuf.dart';
+import 'package:spine_client/google/protobuf/timestamp.pb.dart';
+import 'package:spine_client/google/protobuf/type.pb.dart';
+import 'package:spine_client/google/protobuf/wrappers.pb.dart';
+import 'package:spine_client/spine/client/filters.pb.dart';
+import 'package:spine_client/src/any_packer.dart';
+
+/// Evaluates entity filters on the client.
+///
+/// The filters are compiled once: the comparison values are unpacked and normalized, and
+/// the field paths are resolved into field numbers on the first evaluation against each message
+/// type. Evaluating a compiled filter does not allocate.
+///
+/// The semantics follow the server: all the composite filters must pass; an `ALL` composite
+/// passes if all its filters pass, an `EITHER` composite passes if any of them does. A field
+/// filter does not pass if the field path does not exist or goes through a repeated field.
+///
+/// The values are compared in a normalized form. The wrapper types are unwrapped, the integer
+/// numbers of all sizes are compared as `int`s, and the enum values are compared by their names.
+/// So, e.g., a filter built with `eq('count', 42)` matches an `int64` field. Numbers, strings,
+/// and `Timestamp`s can be compared with `lt`, `gt`, `le`, and `ge`. Other values can only be
+/// compared for equality.
+///
+class FilterEvaluator {
+
+    final List<_CompiledComposite> _composites;
+
+    FilterEvaluator._(this._composites);
+
+    /// Compiles the given composite filters, all of which must pass.
+    factory FilterEvaluator.of(Iterable<CompositeFilter> filters) {
+        ArgumentError.checkNotNull(filters, 'filters');
+        var composites = filters
+            .map((filter) => _CompiledComposite(filter))
+            .toList(growable: false);
+        return FilterEvaluator._(composites);
+    }
+
+    /// Checks if the given entity state passes the filters.
+    bool matches(GeneratedMessage state) {
+        for (var i = 0; i < _composites.length; i++) {
+            if (!_composites[i].matches(state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
+
+class _CompiledComposite {
+
+    final bool _either;
+    final List<_CompiledFilter> _filters;
+
+    _CompiledComposite(CompositeFilter filter)
+        : _either = filter.operator == CompositeFilter_CompositeOperator.EITHER,
+          _filters = filter.filter
+              .map((f) => _CompiledFilter(f))
+              .toList(growable: false);
+
+    bool matches(GeneratedMessage state) {
+        for (var i = 0; i < _filters.length; i++) {
+            if (_filters[i].matches(state) == _either) {
+                return _either;
+            }
+        }
+        return !_either;
+    }
+}
+
+class _CompiledFilter {
+
+    final List<String> _path;
+    final Filter_Operator _operator;
+    final Object _expected;
+
+    /// The message type for which the [_fields] are resolved.
+    BuilderInfo? _root;
+
+    /// The numbers of the fields along the [_path], or `null` if the path does not exist in
+    /// the [_root] type.
+    List<int>? _fields;
+
+    _CompiledFilter(Filter filter)
+        : _path = List.unmodifiable(filter.fieldPath.fieldName),
+          _operator = filter.operator,
+          _expected = _normalize(unpack(filter.value));
+
+    bool matches(GeneratedMessage state) {
+        if (!identical(state.info_, _root)) {
+            _root = state.info_;
+            _fields = _resolve(state.info_, _path);
+        }
+        var fields = _fields;
+        if (fields == null) {
+            return false;
+        }
+        Object value = state;
+        for (var i = 0; i < fields.length; i++) {
+            value = (value as GeneratedMessage).getField(fields[i]) as Object;
+        }
+        var actual = _normalize(value);
+        var operator = _operator;
+        if (operator == Filter_Operator.EQUAL) {
+            return _equal(actual, _expected);
+        }
+        var result = _compare(actual, _expected);
+        if (result == null) {
+            return false;
+        }
+        if (operator == Filter_Operator.GREATER_THAN) {
+            return result > 0;
+        }
+        if (operator == Filter_Operator.LESS_THAN) {
+            return result < 0;
+        }
+        if (operator == Filter_Operator.GREATER_OR_EQUAL) {
+            return result >= 0;
+        }
+        if (operator == Filter_Operator.LESS_OR_EQUAL) {
+            return result <= 0;
+        }
+        return false;
+    }
+}
+
+/// Resolves the given field path into the field numbers.
+///
+/// Returns `null` if there is no such field or the path goes through a repeated or a map field.
+///
+List<int>? _resolve(BuilderInfo root, List<String> path) {
+    var fields = <int>[];
+    BuilderInfo? info = root;
+    for (var i = 0; i < path.length; i++) {
+        if (info == null) {
+            return null;
+        }
+        var field = _fieldByProtoName(info, path[i]);
+        if (field == null || field.isRepeated || field.isMapField) {
+            return null;
+        }
+        fields.add(field.tagNumber);
+        var subBuilder = field.subBuilder;
+        info = subBuilder == null ? null : subBuilder().info_;
+    }
+    return List.unmodifiable(fields);
+}
+
+FieldInfo? _fieldByProtoName(BuilderInfo info, String name) {
+    for (var field in info.byIndex) {
+        if (field.protoName == name || field.name == name) {
+            return field;
+        }
+    }
+    return null;
+}
+
+/// Converts the given value into the form in which the values are compared.
+Object _normalize(Object value) {
+    if (value is Int64) {
+        return value.toInt();
+    }
+    if (value is ProtobufEnum) {
+        return value.name;
+    }
+    if (value is! GeneratedMessage) {
+        return value;
+    }
+    if (value is StringValue) {
+        return value.value;
+    }
+    if (value is Int32Value) {
+        return value.value;
+    }
+    if (value is Int64Value) {
+        return value.value.toInt();
+    }
+    if (value is UInt32Value) {
+        return value.value;
+    }
+    if (value is UInt64Value) {
+        return value.value.toInt();
+    }
+    if (value is FloatValue) {
+        return value.value;
+    }
+    if (value is DoubleValue) {
+        return value.value;
+    }
+    if (value is BoolValue) {
+        return value.value;
+    }
+    if (value is BytesValue) {
+        return value.value;
+    }
+    if (value is EnumValue) {
+        return value.name;
+    }
+    return value;
+}
+
+bool _equal(Object actual, Object expected) {
+    if (actual is List<int> && expected is List<int>) {
+        if (actual.length != expected.length) {
+            return false;
+        }
+        for (var i = 0; i < actual.length; i++) {
+            if (actual[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    return actual == expected;
+}
+
+int? _compare(Object actual, Object expected) {
+    if (actual is num && expected is num) {
+        return actual.compareTo(expected);
+    }
+    if (actual is String && expected is String) {
+        return actual.compareTo(expected);
+    }
+    if (actual is Timestamp && expected is Timestamp) {
+        var seconds = actual.seconds.compareTo(expected.seconds);
+        return seconds != 0 ? seconds : actual.nanos.compareTo(expected.nanos);
+    }
+    return null;
+}
@@ -36,22 +36,52 @@ const _protobufContentType = {'Content-Type': 'application/x-protobuf'};
 
 /// An HTTP client for connecting to the backend.
 ///
+/// All the requests are sent via a single long-lived [http.Client], so that the connections to
+/// the backend are kept alive and reused between requests. By default, the platform client is
+/// used, which pools persistent connections on the VM and leaves the connection management,
+/// including HTTP/2, to the browser on the web.
+///
+/// A custom [http.Client] may be passed as the `transport`, e.g. to configure the connection
+/// pool or to send the requests via a different protocol. Such a transport is not closed by
+/// this client.
+///
 class HttpClient {
 
     final String _baseUrl;
+    final http.Client _transport;
+    final bool _ownsTransport;
 
-    HttpClient(this._baseUrl) {
+    HttpClient(this._baseUrl, {http.Client? transport = null})
+        : _transport = transport ?? http.Client(),
+          _ownsTransport = transport == null {
         ArgumentError.checkNotNull(_baseUrl, 'base URL');
     }
 
     /// Sends an HTTP POST request at the given path with the given message as request body.
     ///
-    /// The given [path] will be concatenated with the [_baseUrl].
+    /// The given [path] will be concatenated with the [_baseUrl]. The [parameters], if any, are
+    /// added to the URL as the query parameters.
     ///
-    Future<http.Response> postMessage(String path, GeneratedMessage message) {
+    Future<http.Response> postMessage(String path,
+                                      GeneratedMessage message,
+                                      {Map<String, String> parameters = const {}}) {
         var bytes = message.writeToBuffer();
-        var url = Url.from(_baseUrl, path).asUri;
-        var response = http.post(url, body: _base64.encode(bytes), headers: _protobufContentType);
+        var url = Url.from(_baseUrl, path)
+                     .withParameters(parameters)
+                     .asUri;
+        var response = _transport.post(url,
+                                       body: _base64.encode(bytes),
+                                       headers: _protobufContentType);
         return response;
     }
+
+    /// Closes the connections to the backend.
+    ///
+    /// The requests sent after this client is closed fail. A custom transport is left open.
+    ///
+    void close() {
+        if (_ownsTransport) {
+            _transport.close();
+        }
+    }
 }
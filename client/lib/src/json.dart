@@ -35,14 +35,29 @@ const _json = JsonCodec();
 /// Parses the given JSON string into a message.
 void parseInto(GeneratedMessage message, String json) {
     var jsonMap = _json.decode(json);
-    message.mergeFromProto3Json(jsonMap,
+    mergeInto(message, jsonMap);
+}
+
+/// Merges the given decoded JSON value into a message.
+///
+/// The value is merged as is, without being encoded into a string and decoded back.
+///
+void mergeInto(GeneratedMessage message, Object? json) {
+    message.mergeFromProto3Json(json,
                                 ignoreUnknownFields: true,
                                 typeRegistry: theKnownTypes.registry());
 }
 
-/// Parses the given JSON string into a new instance of the message described by the [builder].
-T parseIntoNewInstance<T extends GeneratedMessage>(BuilderInfo builder, String json) {
+/// Parses the given JSON into a new instance of the message described by the [builder].
+///
+/// The [json] is either a JSON string or an already decoded JSON object.
+///
+T parseIntoNewInstance<T extends GeneratedMessage>(BuilderInfo builder, Object json) {
     var msg = builder.createEmptyInstance!.call();
-    parseInto(msg, json);
+    if (json is String) {
+        parseInto(msg, json);
+    } else {
+        mergeInto(msg, json);
+    }
     return msg as T;
 }
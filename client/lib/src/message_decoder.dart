@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:protobuf/protobuf.dart';
+import 'package:spine_client/src/json.dart';
+import 'package:spine_client/src/known_types.dart';
+
+/// A strategy of parsing the JSON values received from the server into messages.
+///
+abstract class MessageDecoder {
+
+    /// Parses each of the [values] into a new message of the type with the given URL.
+    ///
+    /// Each value is either a JSON string or an already decoded JSON object.
+    ///
+    Future<List<T>> decode<T extends GeneratedMessage>(String typeUrl, List<Object> values);
+}
+
+/// A [MessageDecoder] which parses the values on the calling isolate.
+///
+class InlineDecoder implements MessageDecoder {
+
+    const InlineDecoder();
+
+    @override
+    Future<List<T>> decode<T extends GeneratedMessage>(String typeUrl, List<Object> values) {
+        return Future.sync(() => decodeInline<T>(typeUrl, values));
+    }
+}
+
+/// Parses each of the [values] into a new message of the type with the given URL on the calling
+/// isolate.
+///
+/// Throws an `ArgumentError` if the type is unknown.
+///
+List<T> decodeInline<T extends GeneratedMessage>(String typeUrl, List<Object> values) {
+    var builder = theKnownTypes.findBuilderInfo(typeUrl);
+    if (builder == null) {
+        throw ArgumentError.value(typeUrl, 'typeUrl', 'Type `$typeUrl` is unknown.');
+    }
+    return values
+        .map((value) => parseIntoNewInstance<T>(builder, value))
+        .toList();
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:spine_client/firebase_client.dart';
+
+// The functions below obtain the values of Firebase node children in the cheapest available form.
+// If the `FirebaseClient` is a `StructuredFirebaseClient`, the values are obtained as decoded
+// maps. Otherwise, the values are JSON strings.
+
+/// Obtains children of the database node under a given path.
+///
+/// See [FirebaseClient.get].
+///
+Stream<Object> getValues(FirebaseClient database, String path) =>
+    database is StructuredFirebaseClient
+    ? database.getMaps(path)
+    : database.get(path);
+
+/// Obtains the values of the children added to the database node under a given path.
+///
+/// See [FirebaseClient.childAdded].
+///
+Stream<Object> childAddedValues(FirebaseClient database, String path) =>
+    database is StructuredFirebaseClient
+    ? database.childAddedMaps(path)
+    : database.childAdded(path);
+
+/// Obtains the values of the children changed in the database node under a given path.
+///
+/// See [FirebaseClient.childChanged].
+///
+Stream<Object> childChangedValues(FirebaseClient database, String path) =>
+    database is StructuredFirebaseClient
+    ? database.childChangedMaps(path)
+    : database.childChanged(path);
+
+/// Obtains the values of the children removed from the database node under a given path.
+///
+/// See [FirebaseClient.childRemoved].
+///
+Stream<Object> childRemovedValues(FirebaseClient database, String path) =>
+    database is StructuredFirebaseClient
+    ? database.childRemovedMaps(path)
+    : database.childRemoved(path);
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:collection';
+
+import 'package:protobuf/protobuf.dart';
+import 'package:spine_client/src/message_copy.dart';
+
+/// A cache of query results.
+///
+/// The results are kept for the given time-to-live and evicted in the least-recently-used order
+/// once the total number of cached messages exceeds the capacity.
+///
+/// The results of queries to a certain type become stale once an entity of that type changes.
+/// Such results are dropped by [invalidate]. A result received from the server after an
+/// invalidation of its type but for a query sent before it may also be stale. To prevent
+/// caching such results, [put] accepts the [generation] of the type obtained before the query
+/// is sent.
+///
+/// The cached messages are never given away. The callers obtain copies of them. The frozen
+/// messages cannot be modified, so they are not copied.
+///
+class QueryCache {
+
+    final Duration _ttl;
+    final int _capacity;
+    final LinkedHashMap<String, _Entry> _entries = LinkedHashMap();
+    final Map<String, int> _generations = Map();
+    int _size = 0;
+
+    /// Creates a new cache which keeps the results for [_ttl] and holds at most [_capacity]
+    /// messages.
+    QueryCache(this._ttl, this._capacity) {
+        ArgumentError.checkNotNull(_ttl, 'ttl');
+        ArgumentError.checkNotNull(_capacity, 'capacity');
+        if (_ttl <= Duration.zero) {
+            throw ArgumentError.value(_ttl, 'ttl', 'TTL must be positive.');
+        }
+        if (_capacity <= 0) {
+            throw ArgumentError.value(_capacity, 'capacity', 'Capacity must be positive.');
+        }
+    }
+
+    /// Obtains copies of the results cached by the given key.
+    ///
+    /// Returns `null` if there are no results or they have expired.
+    ///
+    List<T>? get<T extends GeneratedMessage>(String key) {
+        var entry = _entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        if (DateTime.now().isAfter(entry.expiresAt)) {
+            _size -= entry.results.length;
+            return null;
+        }
+        _entries[key] = entry;
+        return entry.results
+            .map((message) => copyOf(message) as T)
+            .toList();
+    }
+
+    /// Obtains the current generation of the results of queries to the given type.
+    ///
+    /// The generation changes each time the results of the type are [invalidate]d.
+    ///
+    int generation(String type) => _generations[type] ?? 0;
+
+    /// Caches copies of the [results] of a query to the given [type] by the given [key].
+    ///
+    /// If the results of the [type] were invalidated since the given [generation], the results
+    /// are not cached.
+    ///
+    void put(String key, String type, int generation, List<GeneratedMessage> results) {
+        if (generation != this.generation(type) || results.length > _capacity) {
+            return;
+        }
+        _remove(key);
+        var copies = results.map(copyOf).toList();
+        _entries[key] = _Entry(type, copies, DateTime.now().add(_ttl));
+        _size += copies.length;
+        while (_size > _capacity) {
+            _remove(_entries.keys.first);
+        }
+    }
+
+    /// Drops all the results of queries to the given type.
+    void invalidate(String type) {
+        _generations[type] = generation(type) + 1;
+        var stale = _entries.entries
+            .where((entry) => entry.value.type == type)
+            .map((entry) => entry.key)
+            .toList();
+        stale.forEach(_remove);
+    }
+
+    void _remove(String key) {
+        var entry = _entries.remove(key);
+        if (entry != null) {
+            _size -= entry.results.length;
+        }
+    }
+}
+
+class _Entry {
+
+    final String type;
+    final List<GeneratedMessage> results;
+    final DateTime expiresAt;
+
+    _Entry(this.type, this.results, this.expiresAt);
+}
@@ -28,9 +28,12 @@ import 'package:http/http.dart' as http;
 import 'package:protobuf/protobuf.dart';
 import 'package:spine_client/firebase_client.dart';
 import 'package:spine_client/spine/client/query.pb.dart';
+import 'package:spine_client/spine/web/dart/adaptive_query.pb.dart';
 import 'package:spine_client/spine/web/firebase/query/response.pb.dart';
 import 'package:spine_client/src/json.dart';
 import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/message_decoder.dart';
+import 'package:spine_client/src/node_values.dart';
 
 import 'any_packer.dart';
 
@@ -42,27 +45,65 @@ abstract class QueryResponseProcessor {
 
 /// Parses the HTTP response as a Firebase database reference and reads the query response from
 /// by that reference.
+///
+/// The query results read at once are parsed by the given [MessageDecoder].
+///
 class FirebaseResponseProcessor implements QueryResponseProcessor {
 
     final FirebaseClient _database;
+    final MessageDecoder _decoder;
 
-    FirebaseResponseProcessor(this._database) {
+    FirebaseResponseProcessor(this._database, [this._decoder = const InlineDecoder()]) {
         ArgumentError.checkNotNull(_database, 'FirebaseClient');
+        ArgumentError.checkNotNull(_decoder, 'MessageDecoder');
     }
 
     @override
     Stream<T> process<T extends GeneratedMessage>(Future<http.Response> httpResponse, Query query) {
-        var targetTypeUrl = query.target.type;
-        var builder = theKnownTypes.findBuilderInfo(targetTypeUrl);
-        if (builder == null) {
-            throw ArgumentError.value(query, 'query', 'Target type `$targetTypeUrl` is unknown.');
-        }
+        var builder = _targetBuilder(query);
         return httpResponse.then(_parse)
                            .asStream()
-                           .asyncExpand((response) => _database.get(response.path)
-                                                               .take(response.count.toInt()))
-                           .map((json) => parseIntoNewInstance(builder, json));
-  }
+                           .asyncExpand((response) => _read<T>(response, query, builder));
+    }
+
+    /// Reads the query result from the node specified by the [response].
+    ///
+    /// If the database client is capable of reading the whole node at once, the result is read
+    /// in a single request and parsed in a single batch. The children are ordered by their keys,
+    /// which follow the order of writing. If not all the children are visible yet, they are
+    /// awaited one by one.
+    ///
+    Stream<T> _read<T extends GeneratedMessage>(FirebaseQueryResponse response,
+                                                Query query,
+                                                BuilderInfo builder) {
+        var count = response.count.toInt();
+        var database = _database;
+        if (database is! BulkReadFirebaseClient) {
+            return _readOneByOne(response.path, count, builder);
+        }
+        return database.readChildren(response.path).asStream().asyncExpand((children) {
+            if (children.length < count) {
+                return _readOneByOne(response.path, count, builder);
+            }
+            var keys = children.keys.toList()
+                ..sort();
+            var values = keys
+                .take(count)
+                .map((key) => children[key]!)
+                .toList();
+            return _decoder.decode<T>(query.target.type, values)
+                           .asStream()
+                           .expand((entities) => entities);
+        });
+    }
+
+    Stream<T> _readOneByOne<T extends GeneratedMessage>(String path,
+                                                        int count,
+                                                        BuilderInfo builder) {
+        return getValues(_database, path)
+            .take(count)
+            .map((json) => parseIntoNewInstance<T>(builder, json));
+    }
 
     FirebaseQueryResponse _parse(http.Response response) {
         var queryResponse = FirebaseQueryResponse();
@@ -71,23 +112,68 @@ class FirebaseResponseProcessor implements QueryResponseProcessor {
     }
 }
 
+/// Parses the HTTP response as an [AdaptiveQueryResponse].
+///
+/// If the response contains the query result, the entities are unpacked right away. Otherwise,
+/// the result is read from the Firebase database in the same way as [FirebaseResponseProcessor]
+/// does.
+///
+class AdaptiveResponseProcessor implements QueryResponseProcessor {
+
+    final FirebaseResponseProcessor _firebaseProcessor;
+    final MessageDecoder _decoder;
+
+    AdaptiveResponseProcessor(FirebaseClient database, [this._decoder = const InlineDecoder()])
+        : _firebaseProcessor = FirebaseResponseProcessor(database, _decoder);
+
+    @override
+    Stream<T> process<T extends GeneratedMessage>(Future<http.Response> httpResponse, Query query) {
+        var builder = _targetBuilder(query);
+        return httpResponse.then((response) => _decode<AdaptiveQueryResponse>(_decoder, response))
+                           .asStream()
+                           .asyncExpand((response) => response.hasDirect()
+                                ? Stream.fromIterable(response.direct.message)
+                                        .map((entity) => unpack(entity.state) as T)
+                                : _firebaseProcessor._read<T>(response.firebase, query, builder));
+    }
+}
+
 /// Parses the HTTP response as a [QueryResponse].
+///
+/// The response is parsed by the given [MessageDecoder].
+///
 class DirectResponseProcessor extends QueryResponseProcessor {
 
+    final MessageDecoder _decoder;
+
+    DirectResponseProcessor([this._decoder = const InlineDecoder()]) {
+        ArgumentError.checkNotNull(_decoder, 'MessageDecoder');
+    }
+
     @override
     Stream<T> process<T extends GeneratedMessage>(Future<http.Response> httpResponse, Query query) {
-        var response = httpResponse.then(_parse);
+        var response = httpResponse.then((r) => _decode<QueryResponse>(_decoder, r));
         var entities = response.asStream()
                                .expand((r) => r.message)
                                .map((entity) => unpack(entity.state) as T);
         return entities;
     }
+}
 
-    QueryResponse _parse(http.Response response) {
-        var queryResponse = QueryResponse();
-        _parseInto(queryResponse, response);
-        return queryResponse;
+/// Parses the body of the HTTP response into a message of type [M] with the given decoder.
+Future<M> _decode<M extends GeneratedMessage>(MessageDecoder decoder, http.Response response) {
+    var typeUrl = theKnownTypes.typeUrlFrom(M);
+    return decoder.decode<M>(typeUrl, [response.body])
+                  .then((messages) => messages.single);
+}
+
+BuilderInfo _targetBuilder(Query query) {
+    var targetTypeUrl = query.target.type;
+    var builder = theKnownTypes.findBuilderInfo(targetTypeUrl);
+    if (builder == null) {
+        throw ArgumentError.value(query, 'query', 'Target type `$targetTypeUrl` is unknown.');
     }
+    return builder;
 }
 
 void _parseInto(GeneratedMessage message, http.Response response) {
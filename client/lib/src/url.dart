@@ -44,6 +44,20 @@ class Url {
         return Url('$host/$path');
     }
 
+    /// Creates a copy of this URL with the given query parameters added.
+    ///
+    /// If this URL already has a parameter with the same name, the parameter value is replaced.
+    ///
+    Url withParameters(Map<String, String> parameters) {
+        if (parameters.isEmpty) {
+            return this;
+        }
+        var uri = asUri;
+        var allParameters = Map.of(uri.queryParameters)
+            ..addAll(parameters);
+        return Url(uri.replace(queryParameters: allParameters).toString());
+    }
+
     /// `Uri` representation of this URL.
     Uri get asUri => Uri.parse(stringUrl);
 
@@ -25,6 +25,8 @@
  */
 
 import 'dart:async';
+import 'dart:collection';
+import 'dart:convert';
 
 import 'package:protobuf/protobuf.dart';
 import 'package:spine_client/firebase_client.dart';
@@ -32,7 +34,10 @@ import 'package:spine_client/spine/client/subscription.pb.dart' as pb;
 import 'package:spine_client/spine/core/event.pb.dart';
 import 'package:spine_client/spine/web/firebase/subscription/firebase_subscription.pb.dart';
 import 'package:spine_client/src/any_packer.dart';
+import 'package:spine_client/src/entity_store.dart';
+import 'package:spine_client/src/entity_version.dart';
 import 'package:spine_client/src/json.dart';
+import 'package:spine_client/src/node_values.dart';
 
 /// A subscription to updates from server.
 class Subscription<T extends GeneratedMessage> {
@@ -44,10 +49,11 @@ class Subscription<T extends GeneratedMessage> {
     final pb.Subscription subscription;
 
     final Stream<T> _itemAdded;
+    final void Function()? _onUnsubscribe;
 
     bool _closed;
 
-    Subscription._(this.subscription, Stream<T> itemAdded)
+    Subscription._(this.subscription, Stream<T> itemAdded, this._onUnsubscribe)
         : _itemAdded = _checkBroadcast(itemAdded),
           _closed = false;
 
@@ -56,10 +62,17 @@ class Subscription<T extends GeneratedMessage> {
 
     /// Closes this subscription.
     ///
+    /// The streams of this subscription stop listening to the Firebase node and are closed.
     /// The server will stop reflecting the updates for the topic.
     ///
+    /// Unsubscribing an already closed subscription has no effect.
+    ///
     void unsubscribe() {
+        if (_closed) {
+            return;
+        }
         _closed = true;
+        _onUnsubscribe?.call();
     }
 }
 
@@ -68,6 +81,14 @@ class Subscription<T extends GeneratedMessage> {
 /// The [itemAdded], [itemChanged] and [itemRemoved] streams reflect the changes of a corresponding
 /// entity type.
 ///
+/// If the server stamps the entity states with versions, the states which arrive late or twice
+/// are dropped before being parsed.
+///
+/// Each update is parsed at most once, regardless of the number of listeners. The listeners which
+/// need only some of the fields of the updated entities may listen to [lazyItemAdded],
+/// [lazyItemChanged], and [lazyItemRemoved] instead, so that the updates are parsed only when
+/// the listeners access them.
+///
 /// To stop receiving updates from the server, invoke [unsubscribe]. This will cancel the
 /// subscription both on the client and on the server, stopping the changes from being reflected to
 /// Firebase.
@@ -77,35 +98,190 @@ class StateSubscription<T extends GeneratedMessage> extends Subscription<T> {
     final Stream<T> itemChanged;
     final Stream<T> itemRemoved;
 
+    /// The same updates as [itemAdded], which are parsed only when accessed.
+    ///
+    /// See [LazyMessage].
+    ///
+    final Stream<LazyMessage<T>> lazyItemAdded;
+
+    /// The same updates as [itemChanged], which are parsed only when accessed.
+    ///
+    /// See [LazyMessage].
+    ///
+    final Stream<LazyMessage<T>> lazyItemChanged;
+
+    /// The same updates as [itemRemoved], which are parsed only when accessed.
+    ///
+    /// See [LazyMessage].
+    ///
+    final Stream<LazyMessage<T>> lazyItemRemoved;
+    final EntityVersions _versions;
+    final _StateUpdates<T> _updates;
+
     Stream<T> get itemAdded => _itemAdded;
 
     bool _closed;
 
     StateSubscription._(pb.Subscription subscription,
-                        Stream<T> itemAdded,
-                        Stream<T> itemChanged,
-                        Stream<T> itemRemoved):
-            itemChanged = _checkBroadcast(itemChanged),
-            itemRemoved = _checkBroadcast(itemRemoved),
+                        _StateUpdates<T> updates,
+                        void Function()? onUnsubscribe):
+            itemChanged = _checkBroadcast(updates.changed),
+            itemRemoved = _checkBroadcast(updates.removed),
+            lazyItemAdded = updates.lazyAdded,
+            lazyItemChanged = updates.lazyChanged,
+            lazyItemRemoved = updates.lazyRemoved,
+            _versions = updates.versions,
+            _updates = updates,
+            _closed = false,
+            super._(subscription, updates.added, () {
+                updates.close();
+                onUnsubscribe?.call();
+            });
+
+    StateSubscription._shared(StateSubscription<T> source,
+                              _Forwarding forwarding,
+                              void Function() onUnsubscribe):
+            itemChanged = forwarding.forward(source.itemChanged),
+            itemRemoved = forwarding.forward(source.itemRemoved),
+            lazyItemAdded = forwarding.forward(source.lazyItemAdded),
+            lazyItemChanged = forwarding.forward(source.lazyItemChanged),
+            lazyItemRemoved = forwarding.forward(source.lazyItemRemoved),
+            _versions = source._versions,
+            _updates = source._updates,
             _closed = false,
-            super._(subscription, itemAdded);
+            super._(source.subscription, forwarding.forward(source.itemAdded), () {
+                forwarding.close();
+                onUnsubscribe();
+            });
 
     /// Creates a new instance which broadcasts updates from under the given Firebase node.
+    ///
+    /// The [onUnsubscribe] callback, if any, is invoked when the subscription is closed.
+    ///
+    /// The [onUpdate] callback, if any, is invoked on each accepted update of an entity while
+    /// the subscription is listened to, before the update is parsed.
+    ///
+    /// If the [store] is given, the delivered entity states are the instances shared via it.
+    ///
     factory StateSubscription.of(FirebaseSubscription firebaseSubscription,
                                  BuilderInfo builderInfoForType,
-                                 FirebaseClient database) {
-        var subscription = firebaseSubscription.subscription;
-        var nodePath = firebaseSubscription.nodePath.value;
-        var itemAdded = database
-            .childAdded(nodePath)
-            .map((json) => parseIntoNewInstance<T>(builderInfoForType, json));
-        var itemChanged = database
-            .childChanged(nodePath)
-            .map((json) => parseIntoNewInstance<T>(builderInfoForType, json));
-        var itemRemoved = database.childRemoved(nodePath)
-            .map((json) => parseIntoNewInstance<T>(builderInfoForType, json));
-        return StateSubscription._(subscription, itemAdded, itemChanged, itemRemoved);
+                                 FirebaseClient database,
+                                 {void Function()? onUnsubscribe,
+                                  void Function()? onUpdate,
+                                  EntityStore? store}) {
+        var updates = _StateUpdates<T>(firebaseSubscription.nodePath.value,
+                                       database,
+                                       EntityVersions(),
+                                       builderInfoForType,
+                                       onUpdate,
+                                       store);
+        return StateSubscription._(firebaseSubscription.subscription, updates, onUnsubscribe);
     }
+
+    /// Creates a new instance which continues the [previous] subscription from under the given
+    /// Firebase node.
+    ///
+    /// The entities delivered by the [previous] subscription are considered known. Thus, their
+    /// tombstones are delivered via [itemRemoved] and their new states via [itemChanged].
+    ///
+    factory StateSubscription.resumed(StateSubscription<T> previous,
+                                      FirebaseSubscription firebaseSubscription,
+                                      BuilderInfo builderInfoForType,
+                                      FirebaseClient database,
+                                      {void Function()? onUnsubscribe,
+                                       void Function()? onUpdate,
+                                       EntityStore? store}) {
+        var updates = _StateUpdates<T>(firebaseSubscription.nodePath.value,
+                                       database,
+                                       EntityVersions.from(previous._versions),
+                                       builderInfoForType,
+                                       onUpdate,
+                                       store);
+        return StateSubscription._(firebaseSubscription.subscription, updates, onUnsubscribe);
+    }
+
+    /// Creates a new holder of the [source] subscription.
+    ///
+    /// The holder forwards the updates of the [source] via its own streams, which listen to
+    /// the [source] only while they are listened to. Unsubscribing the holder closes its streams
+    /// and does not affect the [source] and other holders. Instead, the [onUnsubscribe] callback is
+    /// invoked, so that the [source] can be closed when the last of its holders unsubscribes.
+    ///
+    factory StateSubscription.shared(StateSubscription<T> source, void Function() onUnsubscribe) {
+        ArgumentError.checkNotNull(source, 'source');
+        ArgumentError.checkNotNull(onUnsubscribe, 'onUnsubscribe');
+        return StateSubscription._shared(source, _Forwarding(), onUnsubscribe);
+    }
+
+    /// Creates a view of [itemChanged] which delivers only the latest state of each entity per
+    /// [interval].
+    ///
+    /// If an entity changes several times within the interval, e.g. within a frame, only its
+    /// latest state is parsed and delivered, at the end of the interval. The pending state of
+    /// an entity which is removed is dropped.
+    ///
+    Stream<T> conflatedChanges(Duration interval) =>
+        _conflate(lazyItemChanged, lazyItemRemoved, interval, (update) => update._entityKey);
+
+    /// Creates a view of the given stream of this subscription which buffers at most [capacity]
+    /// updates while the listener is paused.
+    ///
+    /// The broadcast streams of a subscription buffer the updates for a paused listener without
+    /// a bound. The database pushes the updates regardless of the pace of the listener, so a slow
+    /// listener may exhaust the memory. The returned stream keeps the buffered updates unparsed
+    /// and applies the [onOverflow] policy once the buffer is full.
+    ///
+    /// The [stream] is one of [lazyItemAdded], [lazyItemChanged], and [lazyItemRemoved].
+    ///
+    Stream<T> bounded(Stream<LazyMessage<T>> stream,
+                      int capacity,
+                      {BufferOverflow onOverflow = BufferOverflow.dropOldest}) {
+        ArgumentError.checkNotNull(stream, 'stream');
+        if (!identical(stream, lazyItemAdded)
+                && !identical(stream, lazyItemChanged)
+                && !identical(stream, lazyItemRemoved)) {
+            throw ArgumentError.value(stream, 'stream', 'Not a stream of this subscription.');
+        }
+        return _bounded(stream, capacity, onOverflow, (update) => update._entityKey);
+    }
+
+    /// Holds back the updates from the Firebase node until they are released.
+    ///
+    /// The held updates are neither classified nor delivered. They are delivered upon
+    /// [releaseUpdates] or dropped once the subscription is closed.
+    ///
+    /// The client holds the updates of a subscription while resuming it, since the server
+    /// deletes the node of the resumed subscription.
+    ///
+    void holdUpdates() => _updates.hold();
+
+    /// Delivers the updates held since [holdUpdates] and stops holding the further updates.
+    void releaseUpdates() => _updates.release();
+
+    /// Creates a subscription which delivers the updates from under the given Firebase node to
+    /// the streams of this subscription.
+    ///
+    /// The updates held back by this subscription are dropped. This subscription and its shared
+    /// holders keep delivering the updates, and the entity versions seen so far are retained.
+    /// The returned subscription should be unsubscribed instead of this one.
+    ///
+    /// The [onUnsubscribe] callback, if any, is invoked when the returned subscription is closed.
+    ///
+    StateSubscription<T> relocate(FirebaseSubscription firebaseSubscription,
+                                  FirebaseClient database,
+                                  {void Function()? onUnsubscribe}) {
+        ArgumentError.checkNotNull(firebaseSubscription, 'firebaseSubscription');
+        ArgumentError.checkNotNull(database, 'database');
+        _updates.relocate(firebaseSubscription.nodePath.value, database);
+        return StateSubscription._(firebaseSubscription.subscription, _updates, onUnsubscribe);
+    }
+
+    /// The latest version of the entity states delivered by this subscription.
+    ///
+    /// Is `null` if the server does not stamp the entity states with versions or if no states
+    /// have been delivered yet.
+    ///
+    int? get seenVersion => _versions.latest;
 }
 
 /// A subscription for events.
@@ -121,16 +297,27 @@ class EventSubscription<T extends GeneratedMessage> extends Subscription<Event>
 
     static final BuilderInfo _eventBuilderInfo = Event.getDefault().info_;
 
-    EventSubscription._(pb.Subscription subscription, Stream<Event> itemAdded) :
-            super._(subscription, itemAdded);
+    final Stream<LazyMessage<Event>> _lazyEvents;
+
+    EventSubscription._(pb.Subscription subscription,
+                        _NodeUpdates<Event> updates,
+                        void Function()? onUnsubscribe) :
+            _lazyEvents = updates.lazyStream,
+            super._(subscription, updates.stream, () {
+                updates.close();
+                onUnsubscribe?.call();
+            });
 
+    /// Creates a new instance which broadcasts events from under the given Firebase node.
+    ///
+    /// The [onUnsubscribe] callback, if any, is invoked when the subscription is closed.
+    ///
     factory EventSubscription.of(FirebaseSubscription firebaseSubscription,
-                                 FirebaseClient database) {
-        var subscription = firebaseSubscription.subscription;
+                                 FirebaseClient database,
+                                 {void Function()? onUnsubscribe}) {
         var nodePath = firebaseSubscription.nodePath.value;
-        var itemAdded = database.childAdded(nodePath)
-            .map((json) => parseIntoNewInstance<Event>(_eventBuilderInfo, json));
-        return EventSubscription._(subscription, itemAdded);
+        var updates = _NodeUpdates<Event>(childAddedValues(database, nodePath), _eventBuilderInfo);
+        return EventSubscription._(firebaseSubscription.subscription, updates, onUnsubscribe);
     }
 
     /// A stream of events along with their metadata, such as `EventContext`s.
@@ -139,6 +326,538 @@ class EventSubscription<T extends GeneratedMessage> extends Subscription<Event>
     /// A stream of typed event messages.
     Stream<T> get eventMessages => events
         .map((event) => unpack(event.message) as T);
+
+    /// Creates a view of [events] which delivers at most one event per [interval], the latest
+    /// one.
+    ///
+    /// Suits the listeners which only display the most recent event. The skipped events are
+    /// never parsed.
+    ///
+    Stream<Event> latestEvents(Duration interval) =>
+        _conflate(_lazyEvents, null, interval, (_) => '');
+
+    /// Creates a view of [events] which buffers at most [capacity] events while the listener is
+    /// paused.
+    ///
+    /// See [StateSubscription.bounded].
+    ///
+    Stream<Event> boundedEvents(int capacity,
+                                {BufferOverflow onOverflow = BufferOverflow.dropOldest}) =>
+        _bounded(_lazyEvents, capacity, onOverflow, (_) => '');
+}
+
+/// Forwards the streams of a shared subscription to one of its holders.
+///
+/// Each forwarded stream listens to its source only while it has listeners itself. Once
+/// [close]d, the forwarded streams stop listening to the sources and are closed.
+///
+class _Forwarding {
+
+    final List<StreamController<dynamic>> _controllers = [];
+    final List<void Function()> _cancellations = [];
+
+    Stream<S> forward<S>(Stream<S> source) {
+        StreamSubscription<S>? subscription;
+        late StreamController<S> controller;
+        void cancel() {
+            subscription?.cancel();
+            subscription = null;
+        }
+        controller = StreamController.broadcast(
+            onListen: () {
+                subscription = source.listen(controller.add,
+                                             onError: controller.addError,
+                                             onDone: controller.close);
+            },
+            onCancel: cancel
+        );
+        _controllers.add(controller);
+        _cancellations.add(cancel);
+        return controller.stream;
+    }
+
+    /// Stops forwarding and closes the forwarded streams.
+    void close() {
+        for (var cancel in _cancellations) {
+            cancel();
+        }
+        for (var controller in _controllers) {
+            controller.close();
+        }
+    }
+}
+
+/// The entity state changes of a subscription node.
+///
+/// The node is listened to only once, regardless of the number of listeners, so that each
+/// update is classified and parsed once. The updates are classified by the [versions] into
+/// the [added], [changed], and [removed] broadcast streams.
+///
+/// Each update is also delivered as a [LazyMessage] via the [lazyAdded], [lazyChanged], and
+/// [lazyRemoved] streams. The update is parsed only if there are listeners of the parsed states or
+/// once a lazy message is accessed. In both cases, it is parsed once.
+///
+class _StateUpdates<T extends GeneratedMessage> {
+
+    final EntityVersions versions;
+    Map<EntityChange, Stream<Object>> _sources;
+    final BuilderInfo _builderInfo;
+    final void Function()? _onUpdate;
+    final EntityStore? _store;
+    final Map<EntityChange, StreamController<T>> _controllers = Map();
+    final Map<EntityChange, StreamController<LazyMessage<T>>> _lazyControllers = Map();
+    final List<StreamSubscription<Object>> _subscriptions = [];
+    List<MapEntry<Object, EntityChange>>? _held;
+    int _completed = 0;
+
+    _StateUpdates(String nodePath,
+                  FirebaseClient database,
+                  this.versions,
+                  this._builderInfo,
+                  [this._onUpdate = null,
+                   this._store = null])
+        : _sources = _sourcesOf(nodePath, database) {
+        for (var change in EntityChange.values) {
+            _controllers[change] = StreamController.broadcast(onListen: _listen,
+                                                              onCancel: _cancel);
+            _lazyControllers[change] = StreamController.broadcast(onListen: _listen,
+                                                                  onCancel: _cancel);
+        }
+    }
+
+    static Map<EntityChange, Stream<Object>> _sourcesOf(String nodePath,
+                                                         FirebaseClient database) => {
+        EntityChange.added: childAddedValues(database, nodePath),
+        EntityChange.changed: childChangedValues(database, nodePath),
+        EntityChange.removed: childRemovedValues(database, nodePath)
+    };
+
+    Stream<T> get added => _controllers[EntityChange.added]!.stream;
+
+    Stream<T> get changed => _controllers[EntityChange.changed]!.stream;
+
+    Stream<T> get removed => _controllers[EntityChange.removed]!.stream;
+
+    Stream<LazyMessage<T>> get lazyAdded => _lazyControllers[EntityChange.added]!.stream;
+
+    Stream<LazyMessage<T>> get lazyChanged => _lazyControllers[EntityChange.changed]!.stream;
+
+    Stream<LazyMessage<T>> get lazyRemoved => _lazyControllers[EntityChange.removed]!.stream;
+
+    Iterable<StreamController<Object>> get _allControllers =>
+        [..._controllers.values, ..._lazyControllers.values];
+
+    void _listen() {
+        if (_subscriptions.isNotEmpty) {
+            return;
+        }
+        _sources.forEach((reported, source) {
+            _subscriptions.add(source.listen((json) => _dispatch(json, reported),
+                                             onError: _addError,
+                                             onDone: _complete));
+        });
+    }
+
+    void _cancel() {
+        if (_allControllers.any((controller) => controller.hasListener)) {
+            return;
+        }
+        for (var subscription in _subscriptions) {
+            subscription.cancel();
+        }
+        _subscriptions.clear();
+        _completed = 0;
+    }
+
+    /// Starts holding back the updates instead of delivering them.
+    void hold() {
+        _held ??= [];
+    }
+
+    /// Delivers the held updates in the order of their arrival and stops holding the updates.
+    void release() {
+        var held = _held;
+        _held = null;
+        held?.forEach((update) => _dispatch(update.key, update.value));
+    }
+
+    /// Starts listening to another node instead of the current one.
+    ///
+    /// The held updates, if any, are dropped, since they come from the current node.
+    ///
+    void relocate(String nodePath, FirebaseClient database) {
+        var listening = _subscriptions.isNotEmpty;
+        for (var subscription in _subscriptions) {
+            subscription.cancel();
+        }
+        _subscriptions.clear();
+        _completed = 0;
+        _held = null;
+        _sources = _sourcesOf(nodePath, database);
+        if (listening) {
+            _listen();
+        }
+    }
+
+    /// Stops listening to the node and closes the streams.
+    ///
+    /// The held updates, if any, are dropped.
+    ///
+    void close() {
+        _held = null;
+        for (var subscription in _subscriptions) {
+            subscription.cancel();
+        }
+        _subscriptions.clear();
+        for (var controller in _allControllers) {
+            controller.close();
+        }
+    }
+
+    void _dispatch(Object json, EntityChange reported) {
+        var held = _held;
+        if (held != null) {
+            held.add(MapEntry(json, reported));
+            return;
+        }
+        var change = versions.classify(json, reported);
+        if (change == null) {
+            return;
+        }
+        _onUpdate?.call();
+        var controller = _controllers[change]!;
+        var lazyController = _lazyControllers[change]!;
+        var store = _store;
+        if (!controller.hasListener && !lazyController.hasListener && store == null) {
+            return;
+        }
+        var lazy = LazyMessage<T>._(json, _builderInfo);
+        if (store != null) {
+            T value;
+            try {
+                value = lazy.message;
+            } catch (e, stackTrace) {
+                controller.addError(e, stackTrace);
+                lazyController.addError(e, stackTrace);
+                return;
+            }
+            if (change == EntityChange.removed) {
+                store.remove(value);
+            } else {
+                lazy._message = store.put(value);
+            }
+        }
+        lazyController.add(lazy);
+        if (!controller.hasListener) {
+            return;
+        }
+        T value;
+        try {
+            value = lazy.message;
+        } catch (e, stackTrace) {
+            controller.addError(e, stackTrace);
+            return;
+        }
+        controller.add(value);
+    }
+
+    void _addError(Object error, StackTrace stackTrace) {
+        for (var controller in _allControllers) {
+            controller.addError(error, stackTrace);
+        }
+    }
+
+    void _complete() {
+        _completed++;
+        if (_completed == _sources.length) {
+            for (var controller in _allControllers) {
+                controller.close();
+            }
+        }
+    }
+}
+
+/// An entity state which is parsed on the first access.
+///
+/// Parsing a message is much more expensive than reading a single value of it. A listener which
+/// needs only some of the fields may read them via the [field] method, which looks up the raw JSON
+/// value without parsing the whole message. The [message] is parsed once, on the first access,
+/// and is shared by all the listeners.
+///
+class LazyMessage<T extends GeneratedMessage> {
+
+    final Object _json;
+    final BuilderInfo _builderInfo;
+    T? _message;
+    Map<String, dynamic>? _fields;
+
+    LazyMessage._(this._json, this._builderInfo);
+
+    /// The parsed message.
+    ///
+    /// Throws an error if the update cannot be parsed.
+    ///
+    T get message => _message ??= parseIntoNewInstance<T>(_builderInfo, _json);
+
+    /// Checks if the [message] is already parsed.
+    bool get isParsed => _message != null;
+
+    /// The key of the entity, which is the same for all the updates of the entity.
+    ///
+    /// The key stamped by the server is used if present. Otherwise, the entity ID, which is
+    /// the first field of the state, is looked up without parsing the whole message.
+    ///
+    String get _entityKey {
+        var stamped = entityKey(_json);
+        if (stamped != null) {
+            return stamped;
+        }
+        var idField = _builderInfo.byIndex.first;
+        return jsonEncode(field(idField.name));
+    }
+
+    /// Obtains the raw JSON value of the field with the given JSON name, e.g. `taskId`.
+    ///
+    /// The nested messages are returned as maps. Returns `null` if the field is not set.
+    ///
+    Object? field(String jsonName) {
+        var fields = _fields ??= _decode();
+        return fields[jsonName];
+    }
+
+    Map<String, dynamic> _decode() {
+        var json = _json;
+        var decoded = json is String ? jsonDecode(json) : json;
+        return (decoded as Map).cast<String, dynamic>();
+    }
+}
+
+/// The values added to a subscription node.
+///
+/// The node is listened to only once, regardless of the number of listeners, and only while
+/// the [stream] or the [lazyStream] has listeners. Each value is parsed at most once.
+///
+class _NodeUpdates<T extends GeneratedMessage> {
+
+    final Stream<Object> _source;
+    final BuilderInfo _builderInfo;
+    late final StreamController<T> _controller;
+    late final StreamController<LazyMessage<T>> _lazyController;
+    StreamSubscription<Object>? _subscription;
+
+    _NodeUpdates(this._source, this._builderInfo) {
+        _controller = StreamController.broadcast(onListen: _listen, onCancel: _cancel);
+        _lazyController = StreamController.broadcast(onListen: _listen, onCancel: _cancel);
+    }
+
+    Stream<T> get stream => _controller.stream;
+
+    Stream<LazyMessage<T>> get lazyStream => _lazyController.stream;
+
+    /// Stops listening to the node and closes the streams.
+    void close() {
+        _subscription?.cancel();
+        _subscription = null;
+        _controller.close();
+        _lazyController.close();
+    }
+
+    void _listen() {
+        if (_subscription != null) {
+            return;
+        }
+        _subscription = _source.listen((json) {
+            var lazy = LazyMessage<T>._(json, _builderInfo);
+            _lazyController.add(lazy);
+            if (!_controller.hasListener) {
+                return;
+            }
+            T value;
+            try {
+                value = lazy.message;
+            } catch (e, stackTrace) {
+                _controller.addError(e, stackTrace);
+                return;
+            }
+            _controller.add(value);
+        }, onError: (Object error, StackTrace stackTrace) {
+            _controller.addError(error, stackTrace);
+            _lazyController.addError(error, stackTrace);
+        }, onDone: () {
+            _controller.close();
+            _lazyController.close();
+        });
+    }
+
+    void _cancel() {
+        if (_controller.hasListener || _lazyController.hasListener) {
+            return;
+        }
+        _subscription?.cancel();
+        _subscription = null;
+    }
+}
+
+/// Creates a view of the [updates] which delivers only the latest update of each entity per
+/// [interval].
+///
+/// The first update of an entity starts the interval. The updates of the same entity received
+/// within the interval replace each other. At the end of the interval, the latest updates are
+/// parsed and delivered in the order in which the entities were first updated. The replaced
+/// updates are never parsed.
+///
+/// The pending updates of the entities reported via the [removals] are dropped.
+///
+Stream<T> _conflate<T extends GeneratedMessage>(Stream<LazyMessage<T>> updates,
+                                                Stream<LazyMessage<T>>? removals,
+                                                Duration interval,
+                                                String Function(LazyMessage<T>) keyOf) {
+    if (interval <= Duration.zero) {
+        throw ArgumentError.value(interval, 'interval', 'Interval must be positive.');
+    }
+    var pending = LinkedHashMap<String, LazyMessage<T>>();
+    var subscriptions = <StreamSubscription<LazyMessage<T>>>[];
+    Timer? timer;
+    late StreamController<T> controller;
+
+    void flush() {
+        timer = null;
+        var updates = List.of(pending.values);
+        pending.clear();
+        for (var update in updates) {
+            T value;
+            try {
+                value = update.message;
+            } catch (e, stackTrace) {
+                controller.addError(e, stackTrace);
+                continue;
+            }
+            controller.add(value);
+        }
+    }
+
+    controller = StreamController<T>(
+        onListen: () {
+            subscriptions.add(updates.listen((update) {
+                pending[keyOf(update)] = update;
+                timer ??= Timer(interval, flush);
+            }, onError: controller.addError, onDone: () {
+                timer?.cancel();
+                flush();
+                controller.close();
+            }));
+            if (removals != null) {
+                subscriptions.add(removals.listen((removal) {
+                    pending.remove(keyOf(removal));
+                }, onError: (_) {}));
+            }
+        },
+        onCancel: () {
+            timer?.cancel();
+            timer = null;
+            pending.clear();
+            for (var subscription in subscriptions) {
+                subscription.cancel();
+            }
+        });
+    return controller.stream;
+}
+
+/// The way a bounded subscription buffer handles an update which does not fit into it.
+///
+/// See [StateSubscription.bounded] and [EventSubscription.boundedEvents].
+///
+enum BufferOverflow {
+
+    /// The oldest buffered update is dropped.
+    dropOldest,
+
+    /// The buffered updates of the same entity replace each other, so that only the latest state
+    /// of each entity is kept. If the buffer is still full, the oldest update is dropped.
+    ///
+    /// For events, only the latest event is kept.
+    ///
+    conflate,
+
+    /// The stream stops receiving updates. Once the buffered updates are delivered, the stream
+    /// fails with a `StateError` and closes.
+    error
+}
+
+/// Creates a view of the [updates] which buffers at most [capacity] updates while paused.
+///
+/// A listener pauses its subscription, e.g. when it processes updates via `await for`. The paused
+/// updates are buffered unparsed. When the buffer is full, the [overflow] policy applies.
+///
+Stream<T> _bounded<T extends GeneratedMessage>(Stream<LazyMessage<T>> updates,
+                                               int capacity,
+                                               BufferOverflow overflow,
+                                               String Function(LazyMessage<T>) keyOf) {
+    if (capacity <= 0) {
+        throw ArgumentError.value(capacity, 'capacity', 'Capacity must be positive.');
+    }
+    var buffer = LinkedHashMap<Object, LazyMessage<T>>();
+    var sequence = 0;
+    var overflown = false;
+    StreamSubscription<LazyMessage<T>>? subscription;
+    late StreamController<T> controller;
+
+    void deliver(LazyMessage<T> update) {
+        T value;
+        try {
+            value = update.message;
+        } catch (e, stackTrace) {
+            controller.addError(e, stackTrace);
+            return;
+        }
+        controller.add(value);
+    }
+
+    void drain() {
+        while (buffer.isNotEmpty && !controller.isPaused) {
+            deliver(buffer.remove(buffer.keys.first)!);
+        }
+        if (overflown && buffer.isEmpty) {
+            controller.addError(StateError('The subscription buffer of $capacity updates '
+                                           'has overflown.'));
+            controller.close();
+        }
+    }
+
+    void receive(LazyMessage<T> update) {
+        if (!controller.isPaused && buffer.isEmpty) {
+            deliver(update);
+            return;
+        }
+        var key = overflow == BufferOverflow.conflate ? keyOf(update) : sequence++;
+        if (buffer.length >= capacity && !buffer.containsKey(key)) {
+            if (overflow == BufferOverflow.error) {
+                overflown = true;
+                subscription?.cancel();
+                subscription = null;
+                return;
+            }
+            buffer.remove(buffer.keys.first);
+        }
+        buffer[key] = update;
+    }
+
+    controller = StreamController<T>(
+        onListen: () {
+            subscription = updates.listen(receive, onError: controller.addError, onDone: () {
+                drain();
+                if (buffer.isEmpty) {
+                    controller.close();
+                }
+            });
+        },
+        onResume: drain,
+        onCancel: () {
+            buffer.clear();
+            subscription?.cancel();
+            subscription = null;
+        });
+    return controller.stream;
 }
 
 Stream<T> _checkBroadcast<T>(Stream<T> stream) {
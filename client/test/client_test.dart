@@ -24,6 +24,7 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import 'package:spine_client/spine/web/firebase/subscription/firebase_subscription.pb.dart';
 import 'package:spine_client/spine_client.dart';
 import 'package:test/test.dart';
 
@@ -74,6 +75,54 @@ void main() {
                                           .post();
                 expect(() async => await subscription, throwsA(isNotNull));
             });
+
+            test('when creating live queries', () async {
+                clients = Clients(NON_EXISTING_BACKEND,
+                                  firebase: FakeFirebase(),
+                                  endpoints: Endpoints(
+                                      subscription: SubscriptionEndpoints(
+                                          liveQuery: 'subscription/live-query'
+                                      )
+                                  ),
+                                  typeRegistries: [testTypes.types()]);
+                var subscription = clients.asGuest()
+                                          .liveQuery<Project>()
+                                          .post();
+                expect(() async => await subscription, throwsA(isNotNull));
+            });
+
+            test('when posting commands along with observing events', () async {
+                clients = Clients(NON_EXISTING_BACKEND,
+                                  firebase: FakeFirebase(),
+                                  endpoints: Endpoints(postAndObserve: 'command/observe'),
+                                  typeRegistries: [testTypes.types()]);
+                var request = clients.asGuest()
+                                     .command(CreateProject());
+                var subscription = request.observeEvents<ProjectCreated>();
+                var future = request.post();
+                expect(() async => await future, throwsA(isNotNull));
+                expect(() async => await subscription, throwsA(isNotNull));
+            });
+        });
+
+        test('not create live queries if the endpoint is not configured', () {
+            var clients = Clients('http://localhost/',
+                                  firebase: FakeFirebase(),
+                                  typeRegistries: [testTypes.types()]);
+            var request = clients.asGuest()
+                                 .liveQuery<Project>();
+            expect(() => request.post(), throwsStateError);
+        });
+
+        test('not resume subscriptions if the endpoint is not configured', () {
+            var firebase = FakeFirebase();
+            var clients = Clients('http://localhost/',
+                                  firebase: firebase,
+                                  typeRegistries: [testTypes.types()]);
+            var previous = StateSubscription<Project>.of(FirebaseSubscription(),
+                                                         Project.getDefault().info_,
+                                                         firebase);
+            expect(() => clients.asGuest().resume(previous), throwsStateError);
         });
     });
 }
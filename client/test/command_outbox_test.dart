@@ -0,0 +1,278 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:io';
+
+import 'package:http/http.dart' as http;
+import 'package:spine_client/file_outbox_storage.dart';
+import 'package:spine_client/spine/base/error.pb.dart' as pbError;
+import 'package:spine_client/spine/core/command.pb.dart';
+import 'package:spine_client/spine_client.dart';
+import 'package:spine_client/src/any_packer.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/commands.pb.dart';
+import 'types.dart' as testTypes;
+
+const _batchSize = 4;
+const _batchAcks = '{"ack":[{},{},{},{}]}';
+
+void main() {
+    group('Command outbox should', () {
+
+        late FakeBackend backend;
+        late SwitchableClient transport;
+        late List<Clients> created;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            transport = SwitchableClient();
+            created = [];
+        });
+
+        tearDown(() async {
+            created.forEach((clients) => clients.close());
+            transport.close();
+            await backend.close();
+        });
+
+        Clients newClients(OutboxStorage storage,
+                           {Duration retryPeriod = const Duration(minutes: 1),
+                            Endpoints? endpoints}) {
+            var clients = Clients(backend.baseUrl,
+                                  endpoints: endpoints ?? Endpoints(commandBatch: 'command/batch'),
+                                  commandOutbox: storage,
+                                  commandBatchSize: _batchSize,
+                                  commandRetryPeriod: retryPeriod,
+                                  transport: transport,
+                                  typeRegistries: [testTypes.types()]);
+            created.add(clients);
+            return clients;
+        }
+
+        test('post commands right away while online', () async {
+            var clients = newClients(MemoryOutboxStorage());
+            await clients.asGuest().command(CreateProject()).postAndForget();
+            expect(backend.requests('/command'), equals(1));
+            expect(clients.pendingCommands, isZero);
+        });
+
+        test('store commands while offline and send them in batches', () async {
+            backend.respondTo('/command/batch', _batchAcks);
+            var clients = newClients(MemoryOutboxStorage());
+            var client = clients.asGuest();
+            transport.online = false;
+            for (var i = 0; i < 10; i++) {
+                await client.command(CreateProject()).postAndForget();
+            }
+            expect(clients.pendingCommands, equals(10));
+
+            transport.online = true;
+            await clients.flushCommands();
+            expect(clients.pendingCommands, isZero);
+            expect(backend.requests('/command/batch'), equals(3));
+            expect(backend.requests('/command'), isZero);
+        });
+
+        test('retry sending the stored commands', () async {
+            var clients = newClients(MemoryOutboxStorage(),
+                                     retryPeriod: Duration(milliseconds: 50));
+            transport.online = false;
+            await clients.asGuest().command(CreateProject()).postAndForget();
+            transport.online = true;
+            await backend.awaitRequests('/command', 1);
+            expect(clients.pendingCommands, isZero);
+        });
+
+        test('restore the stored commands in order', () async {
+            backend.respondTo('/command/batch', _batchAcks);
+            var directory = await Directory.systemTemp.createTemp('outbox');
+            var path = '${directory.path}/commands';
+            var clients = newClients(FileOutboxStorage(path));
+            var client = clients.asGuest();
+            transport.online = false;
+            for (var i = 0; i < 3; i++) {
+                var message = CreateProject()
+                    ..uuid = 'p-$i';
+                await client.command(message).postAndForget();
+            }
+            clients.close();
+            var stored = await FileOutboxStorage(path).load();
+            var projects = stored.map((command) => unpack(command.message) as CreateProject);
+            expect(projects.map((message) => message.uuid), equals(['p-0', 'p-1', 'p-2']));
+
+            transport.online = true;
+            var restored = newClients(FileOutboxStorage(path));
+            await restored.flushCommands();
+            expect(restored.pendingCommands, isZero);
+            expect(backend.requests('/command/batch'), equals(1));
+            expect(await FileOutboxStorage(path).load(), isEmpty);
+            await directory.delete(recursive: true);
+        });
+
+        test('keep the commands not acknowledged in a batch', () async {
+            backend.respondTo('/command/batch', '{"ack":[{}]}');
+            var clients = newClients(MemoryOutboxStorage());
+            var client = clients.asGuest();
+            transport.online = false;
+            for (var i = 0; i < 3; i++) {
+                await client.command(CreateProject()).postAndForget();
+            }
+
+            transport.online = true;
+            await clients.flushCommands();
+            expect(clients.pendingCommands, equals(2));
+        });
+
+        test('not send the delivered commands again if the network fails mid-batch', () async {
+            var clients = newClients(MemoryOutboxStorage(), endpoints: Endpoints());
+            var client = clients.asGuest();
+            transport.online = false;
+            for (var i = 0; i < 4; i++) {
+                await client.command(CreateProject()).postAndForget();
+            }
+
+            transport
+                ..online = true
+                ..requestsLeft = 2;
+            await clients.flushCommands();
+            expect(clients.pendingCommands, equals(2));
+            expect(backend.requests('/command'), equals(2));
+
+            transport
+                ..requestsLeft = null
+                ..online = true;
+            await clients.flushCommands();
+            expect(clients.pendingCommands, isZero);
+            expect(backend.requests('/command'), equals(4));
+        });
+
+        test('not queue the same command twice', () async {
+            var command = Command()
+                ..id = (CommandId()..uuid = 'command-1');
+            var storage = MemoryOutboxStorage();
+            await storage.store([command, command]);
+            transport.online = false;
+            var clients = newClients(storage);
+            await clients.flushCommands();
+            expect(clients.pendingCommands, equals(1));
+        });
+
+        test('report the errors of the delivered commands', () async {
+            backend.respondTo('/command', '{"status":{"error":{"message":"Rejected"}}}');
+            var clients = newClients(MemoryOutboxStorage());
+            transport.online = false;
+            var errors = <pbError.Error>[];
+            await clients.asGuest()
+                         .command(CreateProject())
+                         .postAndForget(onError: errors.add);
+            expect(errors, isEmpty);
+
+            transport.online = true;
+            await clients.flushCommands();
+            expect(errors.single.message, equals('Rejected'));
+        });
+
+        test('drop the commands rejected with a client error', () async {
+            backend.respondTo('/command', '<html>Not Found</html>', status: HttpStatus.notFound);
+            var clients = newClients(MemoryOutboxStorage(), endpoints: Endpoints());
+            var client = clients.asGuest();
+            var errors = <pbError.Error>[];
+            await client.command(CreateProject()).postAndForget(onError: errors.add);
+            expect(clients.pendingCommands, isZero);
+            expect(errors.single.message, contains('404'));
+
+            backend.respondTo('/command', '{}');
+            await client.command(CreateProject()).postAndForget(onError: errors.add);
+            expect(clients.pendingCommands, isZero);
+            expect(backend.requests('/command'), equals(2));
+            expect(errors, hasLength(1));
+        });
+
+        test('drop the batches rejected with a client error', () async {
+            backend.respondTo('/command/batch', '<html>Forbidden</html>',
+                              status: HttpStatus.forbidden);
+            var clients = newClients(MemoryOutboxStorage());
+            var client = clients.asGuest();
+            transport.online = false;
+            var errors = <pbError.Error>[];
+            for (var i = 0; i < 3; i++) {
+                await client.command(CreateProject()).postAndForget(onError: errors.add);
+            }
+
+            transport.online = true;
+            await clients.flushCommands();
+            expect(clients.pendingCommands, isZero);
+            expect(backend.requests('/command/batch'), equals(1));
+            expect(errors, hasLength(3));
+        });
+
+        test('keep the commands the server fails to process', () async {
+            backend.respondTo('/command', '<html>Unavailable</html>',
+                              status: HttpStatus.serviceUnavailable);
+            var clients = newClients(MemoryOutboxStorage(), endpoints: Endpoints());
+            var errors = <pbError.Error>[];
+            await clients.asGuest()
+                         .command(CreateProject())
+                         .postAndForget(onError: errors.add);
+            expect(clients.pendingCommands, equals(1));
+            expect(errors, isEmpty);
+        });
+    });
+}
+
+/// An `http.Client` which fails all the requests while offline.
+///
+/// If [requestsLeft] is set, the client goes offline once that many requests are sent.
+///
+class SwitchableClient extends http.BaseClient {
+
+    final http.Client _delegate = http.Client();
+    bool online = true;
+    int? requestsLeft;
+
+    @override
+    Future<http.StreamedResponse> send(http.BaseRequest request) {
+        var left = requestsLeft;
+        if (left != null) {
+            if (left == 0) {
+                online = false;
+            } else {
+                requestsLeft = left - 1;
+            }
+        }
+        if (!online) {
+            return Future.error(http.ClientException('The network is unreachable.', request.url));
+        }
+        return _delegate.send(request);
+    }
+
+    @override
+    void close() => _delegate.close();
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:async';
+
+import 'package:spine_client/spine/core/event.pb.dart';
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/events.pb.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _interval = Duration(milliseconds: 50);
+
+void main() {
+    group('Subscriptions should', () {
+
+        late FakeBackend backend;
+        late ControlledFirebase firebase;
+        late Client client;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = ControlledFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              typeRegistries: [testTypes.types()]);
+            client = clients.asGuest();
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        test('deliver only the latest state of each entity per interval', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var received = <Project>[];
+            subscription.conflatedChanges(_interval).listen(received.add);
+            for (var i = 0; i < 500; i++) {
+                firebase.changed.add('{"uuid":"p-${i % 2}","name":"Version $i"}');
+            }
+            await Future.delayed(_interval * 2);
+            expect(received.map((project) => project.uuid), equals(['p-0', 'p-1']));
+            expect(received.map((project) => project.name), equals(['Version 498', 'Version 499']));
+
+            firebase.changed.add('{"uuid":"p-0","name":"Latest"}');
+            await Future.delayed(_interval * 2);
+            expect(received.last.name, equals('Latest'));
+            subscription.unsubscribe();
+        });
+
+        test('conflate by the key stamped by the server', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var received = <Project>[];
+            subscription.conflatedChanges(_interval).listen(received.add);
+            firebase.added.add('{"uuid":"p-1","@key":"k-1","@version":1}');
+            for (var i = 2; i < 10; i++) {
+                firebase.changed.add('{"uuid":"p-1","name":"$i","@key":"k-1","@version":$i}');
+            }
+            await Future.delayed(_interval * 2);
+            expect(received.single.name, equals('9'));
+            subscription.unsubscribe();
+        });
+
+        test('drop the pending state of a removed entity', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var received = <Project>[];
+            subscription.conflatedChanges(_interval).listen(received.add);
+            firebase.changed.add('{"uuid":"p-1","name":"Changed"}');
+            firebase.changed.add('{"uuid":"p-2","name":"Changed"}');
+            firebase.removed.add('{"uuid":"p-1"}');
+            await Future.delayed(_interval * 2);
+            expect(received.map((project) => project.uuid), equals(['p-2']));
+            subscription.unsubscribe();
+        });
+
+        test('deliver only the latest event per interval', () async {
+            var subscription = await client.subscribeToEvents<ProjectCreated>().post();
+            var received = <Event>[];
+            subscription.latestEvents(_interval).listen(received.add);
+            for (var i = 0; i < 100; i++) {
+                firebase.added.add('{"id":{"value":"e-$i"}}');
+            }
+            await Future.delayed(_interval * 2);
+            expect(received.map((event) => event.id.value), equals(['e-99']));
+            subscription.unsubscribe();
+        });
+    });
+
+    group('Bounded subscription views should', () {
+
+        late FakeBackend backend;
+        late ControlledFirebase firebase;
+        late Client client;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = ControlledFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              typeRegistries: [testTypes.types()]);
+            client = clients.asGuest();
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        Future<List<Project>> receiveAfterPause(Stream<Project> stream,
+                                                void Function() push) async {
+            var received = <Project>[];
+            var listener = stream.listen(received.add);
+            listener.pause();
+            push();
+            await Future.delayed(_interval);
+            expect(received, isEmpty);
+            listener.resume();
+            await Future.delayed(_interval);
+            return received;
+        }
+
+        test('deliver the updates while not paused', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var received = <Project>[];
+            subscription.bounded(subscription.lazyItemAdded, 2).listen(received.add);
+            for (var i = 0; i < 5; i++) {
+                firebase.added.add('{"uuid":"p-$i"}');
+            }
+            await Future.delayed(_interval);
+            expect(received, hasLength(5));
+            subscription.unsubscribe();
+        });
+
+        test('drop the oldest updates while paused', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var stream = subscription.bounded(subscription.lazyItemChanged, 3);
+            var received = await receiveAfterPause(stream, () {
+                for (var i = 0; i < 10; i++) {
+                    firebase.changed.add('{"uuid":"p-$i"}');
+                }
+            });
+            expect(received.map((project) => project.uuid), equals(['p-7', 'p-8', 'p-9']));
+            subscription.unsubscribe();
+        });
+
+        test('keep the latest state of each entity while paused', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var stream = subscription.bounded(subscription.lazyItemChanged, 2,
+                                              onOverflow: BufferOverflow.conflate);
+            var received = await receiveAfterPause(stream, () {
+                for (var i = 0; i < 100; i++) {
+                    firebase.changed.add('{"uuid":"p-${i % 2}","name":"Version $i"}');
+                }
+            });
+            expect(received.map((project) => project.name), equals(['Version 98', 'Version 99']));
+            subscription.unsubscribe();
+        });
+
+        test('fail after delivering the buffer on overflow', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var stream = subscription.bounded(subscription.lazyItemAdded, 2,
+                                              onOverflow: BufferOverflow.error);
+            var received = <Project>[];
+            Object? error;
+            var done = Completer<void>();
+            var listener = stream.listen(received.add,
+                                         onError: (e) => error = e,
+                                         onDone: done.complete);
+            listener.pause();
+            for (var i = 0; i < 5; i++) {
+                firebase.added.add('{"uuid":"p-$i"}');
+            }
+            await Future.delayed(_interval);
+            listener.resume();
+            await done.future.timeout(_interval * 10);
+            expect(received.map((project) => project.uuid), equals(['p-0', 'p-1']));
+            expect(error, isStateError);
+            subscription.unsubscribe();
+        });
+
+        test('reject a foreign stream and a non-positive capacity', () async {
+            var subscription = await client.subscribeTo<Project>().post();
+            var foreign = Stream<LazyMessage<Project>>.empty();
+            expect(() => subscription.bounded(foreign, 1), throwsArgumentError);
+            expect(() => subscription.bounded(subscription.lazyItemAdded, 0),
+                   throwsArgumentError);
+            subscription.unsubscribe();
+        });
+
+        test('bound the buffered events', () async {
+            var subscription = await client.subscribeToEvents<ProjectCreated>().post();
+            var received = <Event>[];
+            var listener = subscription.boundedEvents(2).listen(received.add);
+            listener.pause();
+            for (var i = 0; i < 10; i++) {
+                firebase.added.add('{"id":{"value":"e-$i"}}');
+            }
+            await Future.delayed(_interval);
+            listener.resume();
+            await Future.delayed(_interval);
+            expect(received.map((event) => event.id.value), equals(['e-8', 'e-9']));
+            subscription.unsubscribe();
+        });
+    });
+}
+
+/// A Firebase client which reports the node changes pushed by the test.
+class ControlledFirebase extends FirebaseClient {
+
+    final StreamController<String> added = StreamController.broadcast();
+    final StreamController<String> changed = StreamController.broadcast();
+    final StreamController<String> removed = StreamController.broadcast();
+
+    Future<void> close() async {
+        await added.close();
+        await changed.close();
+        await removed.close();
+    }
+
+    @override
+    Stream<String> childAdded(String path) => added.stream;
+
+    @override
+    Stream<String> childChanged(String path) => changed.stream;
+
+    @override
+    Stream<String> childRemoved(String path) => removed.stream;
+
+    @override
+    Stream<String> get(String path) => Stream.empty();
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:spine_client/spine_client.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _query = '/query';
+
+void main() {
+    setUp(() {
+        theKnownTypes.registerAll([testTypes.types()]);
+    });
+
+    group('EntityStore should', () {
+
+        Project project(String id, [String name = '']) => Project()
+            ..uuid = id
+            ..name = name;
+
+        test('share a single instance of equal states', () {
+            var store = EntityStore();
+            var first = store.put(project('p-1', 'Dart'));
+            var second = store.put(project('p-1', 'Dart'));
+            expect(second, same(first));
+            expect(first.isFrozen, isTrue);
+            expect(store.length, equals(1));
+        });
+
+        test('replace the changed state', () {
+            var store = EntityStore();
+            store.put(project('p-1', 'Dart'));
+            var changed = store.put(project('p-1', 'Java'));
+            expect(store.find<Project>('p-1'), same(changed));
+            expect(store.length, equals(1));
+        });
+
+        test('find the states by ID', () {
+            var store = EntityStore();
+            store.put(project('p-1'));
+            expect(store.find<Project>('p-1'), isNotNull);
+            expect(store.find<Project>('p-2'), isNull);
+        });
+
+        test('remove the states', () {
+            var store = EntityStore();
+            store.put(project('p-1'));
+            store.remove(project('p-1', 'Removed'));
+            expect(store.find<Project>('p-1'), isNull);
+        });
+
+        test('evict the least recently used states', () {
+            var store = EntityStore(capacity: 2);
+            store.put(project('p-1'));
+            store.put(project('p-2'));
+            store.find<Project>('p-1');
+            store.put(project('p-3'));
+            expect(store.find<Project>('p-1'), isNotNull);
+            expect(store.find<Project>('p-2'), isNull);
+            expect(store.find<Project>('p-3'), isNotNull);
+        });
+    });
+
+    group('Client with an entity store should', () {
+
+        late FakeBackend backend;
+        late EntityStore store;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            store = EntityStore();
+            clients = Clients(backend.baseUrl,
+                              queryMode: QueryMode.DIRECT,
+                              entityStore: store,
+                              typeRegistries: [testTypes.types()]);
+            var typeUrl = theKnownTypes.typeUrlFrom(Project);
+            backend.respondTo(_query, '{"message":['
+                '{"state":{"@type":"$typeUrl","uuid":"p-1","name":"Dart"}}'
+                ']}');
+        });
+
+        tearDown(() async {
+            clients.close();
+            await backend.close();
+        });
+
+        test('deliver the shared instances from different queries', () async {
+            var client = clients.asGuest();
+            var all = await client.select<Project>().post().toList();
+            var byId = await client.select<Project>().whereIds(['p-1']).post().toList();
+            expect(backend.requests(_query), equals(2));
+            expect(byId.single, same(all.single));
+            expect(store.find<Project>('p-1'), same(all.single));
+        });
+
+        test('not store the states masked by the query', () async {
+            var client = clients.asGuest();
+            var full = await client.select<Project>().post().toList();
+            var typeUrl = theKnownTypes.typeUrlFrom(Project);
+            backend.respondTo(_query, '{"message":['
+                '{"state":{"@type":"$typeUrl","uuid":"p-1"}}'
+                ']}');
+            var masked = await client.select<Project>().fields(['uuid']).post().toList();
+            expect(masked.single.name, isEmpty);
+            expect(store.find<Project>('p-1'), same(full.single));
+            expect(full.single.name, equals('Dart'));
+        });
+    });
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:spine_client/src/entity_version.dart';
+import 'package:test/test.dart';
+
+void main() {
+    group('EntityVersions should', () {
+
+        late EntityVersions versions;
+
+        setUp(() {
+            versions = EntityVersions();
+        });
+
+        test('deliver updates without versions', () {
+            var json = '{"id":{"value":"42"}}';
+            expect(versions.classify(json, EntityChange.added), equals(EntityChange.added));
+            expect(versions.classify(json, EntityChange.added), equals(EntityChange.added));
+        });
+
+        test('deliver newer versions', () {
+            var first = '{"@key":"a","@version":1,"name":"first"}';
+            var second = '{"@key":"a","@version":2,"name":"second"}';
+            expect(versions.classify(first, EntityChange.added), equals(EntityChange.added));
+            expect(versions.classify(second, EntityChange.changed), equals(EntityChange.changed));
+        });
+
+        test('drop duplicate and stale versions', () {
+            expect(versions.classify('{"@key":"a","@version":5}', EntityChange.added), isNotNull);
+            expect(versions.classify('{"@key":"a","@version":5}', EntityChange.changed), isNull);
+            expect(versions.classify('{"@key":"a","@version":4}', EntityChange.changed), isNull);
+        });
+
+        test('track versions per entity', () {
+            expect(versions.classify('{"@key":"a","@version":5}', EntityChange.added), isNotNull);
+            expect(versions.classify('{"@key":"b","@version":3}', EntityChange.added), isNotNull);
+        });
+
+        test('tolerate whitespace in JSON', () {
+            expect(versions.classify('{ "@key" : "a", "@version" : 7 }', EntityChange.added),
+                   isNotNull);
+            expect(versions.classify('{"@key":"a","@version":7}', EntityChange.changed), isNull);
+        });
+
+        test('deliver an entity again after it is removed', () {
+            var json = '{"@key":"a","@version":5}';
+            expect(versions.classify(json, EntityChange.added), equals(EntityChange.added));
+            expect(versions.classify(json, EntityChange.removed), equals(EntityChange.removed));
+            expect(versions.classify(json, EntityChange.added), equals(EntityChange.added));
+        });
+
+        test('classify states of unknown entities as added', () {
+            var json = '{"@key":"a","@version":1}';
+            expect(versions.classify(json, EntityChange.changed), equals(EntityChange.added));
+        });
+
+        test('classify states of known entities as changed', () {
+            versions.classify('{"@key":"a","@version":1}', EntityChange.added);
+            var json = '{"@key":"a","@version":2}';
+            expect(versions.classify(json, EntityChange.added), equals(EntityChange.changed));
+        });
+
+        test('classify tombstones of known entities as removed', () {
+            versions.classify('{"@key":"a","@version":1}', EntityChange.added);
+            var tombstone = '{"@key":"a","@version":2,"@removed":true}';
+            expect(versions.classify(tombstone, EntityChange.added),
+                   equals(EntityChange.removed));
+            expect(versions.classify(tombstone, EntityChange.removed), isNull);
+        });
+
+        test('drop tombstones of unknown entities', () {
+            var tombstone = '{"@key":"a","@version":2,"@removed":true}';
+            expect(versions.classify(tombstone, EntityChange.added), isNull);
+        });
+
+        test('keep the reported change of updates without versions', () {
+            var json = '{"id":{"value":"42"}}';
+            expect(versions.classify(json, EntityChange.removed), equals(EntityChange.removed));
+        });
+
+        test('read stamps from decoded JSON', () {
+            expect(versions.classify({'@key': 'a', '@version': 5}, EntityChange.added),
+                   equals(EntityChange.added));
+            expect(versions.classify({'@key': 'a', '@version': 5}, EntityChange.changed), isNull);
+            var tombstone = {'@key': 'a', '@version': 6, '@removed': true};
+            expect(versions.classify(tombstone, EntityChange.changed),
+                   equals(EntityChange.removed));
+        });
+
+        test('remember the latest version', () {
+            expect(versions.latest, isNull);
+            versions.classify('{"@key":"a","@version":5}', EntityChange.added);
+            versions.classify('{"@key":"b","@version":3}', EntityChange.added);
+            expect(versions.latest, equals(5));
+            expect(EntityVersions.from(versions).latest, equals(5));
+        });
+    });
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'dart:async';
+import 'dart:convert';
+import 'dart:io';
+
+/// An HTTP server which imitates a Spine-based backend for the client tests.
+///
+/// The server creates fake subscriptions, accepts their keep-ups and cancellations, and counts
+/// the requests by their paths. The responses to other requests are empty JSON objects, unless
+/// configured otherwise.
+///
+class FakeBackend {
+
+    final HttpServer _server;
+    final Map<String, int> _requests = Map();
+    final Set<int> _clientPorts = Set();
+    final Map<String, String> _responses = Map();
+    final Map<String, int> _statuses = Map();
+    final Map<String, Map<String, String>> _parameters = Map();
+    int _subscriptionCount = 0;
+
+    FakeBackend._(this._server) {
+        _server.listen(_handle);
+    }
+
+    /// Starts a new server on the loopback interface.
+    static Future<FakeBackend> start() async {
+        var server = await HttpServer.bind(InternetAddress.loopbackIPv4, 0);
+        return FakeBackend._(server);
+    }
+
+    /// The base URL of the server.
+    String get baseUrl => 'http://${_server.address.host}:${_server.port}/';
+
+    /// Obtains the number of requests received at the given path.
+    int requests(String path) => _requests[path] ?? 0;
+
+    /// Obtains the query parameters of the last request received at the given path.
+    Map<String, String> parameters(String path) => _parameters[path] ?? const {};
+
+    /// Makes the server respond to the requests at the given path with the given [body] and
+    /// [status].
+    void respondTo(String path, String body, {int status = HttpStatus.ok}) {
+        _responses[path] = body;
+        _statuses[path] = status;
+    }
+
+    /// Obtains the number of distinct client connections over which the requests were received.
+    int get connections => _clientPorts.length;
+
+    /// Waits until the number of requests received at the given path reaches [count].
+    Future<void> awaitRequests(String path, int count) async {
+        while (requests(path) < count) {
+            await Future.delayed(Duration(milliseconds: 10));
+        }
+    }
+
+    /// Stops the server.
+    Future<void> close() => _server.close(force: true);
+
+    Future<void> _handle(HttpRequest request) async {
+        await utf8.decodeStream(request);
+        var path = request.uri.path;
+        _clientPorts.add(request.connectionInfo!.remotePort);
+        _requests[path] = requests(path) + 1;
+        _parameters[path] = request.uri.queryParameters;
+        var response = _responses[path] ?? '{}';
+        if (path.endsWith('subscription/create')) {
+            var id = 's-${_subscriptionCount++}';
+            response = '{"subscription":{"id":{"value":"$id"}},'
+                       '"nodePath":{"value":"subscriptions/$id"}}';
+        }
+        request.response
+            ..statusCode = _statuses[path] ?? HttpStatus.ok
+            ..headers.contentType = ContentType.json
+            ..write(response);
+        await request.response.close();
+    }
+}
@@ -24,6 +24,8 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import 'dart:async';
+
 import 'package:spine_client/firebase_client.dart';
 
 /// A Firebase client which does not connect to a Firebase Database and always returns empty steams
@@ -51,3 +53,44 @@ class FakeFirebase extends FirebaseClient {
         return Stream.empty();
     }
 }
+
+/// A Firebase client with a separate stream of updates for each node.
+class NodeFirebase extends FirebaseClient {
+
+    final Map<String, FakeNode> _nodes = Map();
+
+    /// Obtains the updates of the node at the given path.
+    FakeNode node(String path) => _nodes.putIfAbsent(path, () => FakeNode());
+
+    Future<void> close() async {
+        for (var node in _nodes.values) {
+            await node.close();
+        }
+    }
+
+    @override
+    Stream<String> childAdded(String path) => node(path).added.stream;
+
+    @override
+    Stream<String> childChanged(String path) => node(path).changed.stream;
+
+    @override
+    Stream<String> childRemoved(String path) => node(path).removed.stream;
+
+    @override
+    Stream<String> get(String path) => Stream.empty();
+}
+
+/// The updates of a single Firebase node.
+class FakeNode {
+
+    final StreamController<String> added = StreamController.broadcast();
+    final StreamController<String> changed = StreamController.broadcast();
+    final StreamController<String> removed = StreamController.broadcast();
+
+    Future<void> close() async {
+        await added.close();
+        await changed.close();
+        await removed.close();
+    }
+}
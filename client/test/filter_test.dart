@@ -24,14 +24,21 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import 'package:fixnum/fixnum.dart';
 import 'package:spine_client/google/protobuf/timestamp.pb.dart';
 import 'package:spine_client/google/protobuf/wrappers.pb.dart';
 import 'package:spine_client/spine/client/filters.pb.dart';
+import 'package:spine_client/spine/core/event.pb.dart';
 import 'package:spine_client/spine_client.dart';
 import 'package:spine_client/src/any_packer.dart';
+import 'package:spine_client/src/known_types.dart';
 import 'package:spine_client/time.dart';
 import 'package:test/test.dart';
 
+import 'spine/people/person_name.pb.dart';
+import 'spine/test/tools/dart/validation.pb.dart';
+import 'types.dart' as testTypes;
+
 const String firstElement = 'foo';
 const String secondElement = 'bar';
 const String fieldPath = '$firstElement.$secondElement';
@@ -86,4 +93,85 @@ void main() {
             expect(filter.filter.length, equals(3));
         });
     });
+
+    group('Compiled filter should', () {
+
+        late Contact contact;
+
+        setUp(() {
+            theKnownTypes.registerAll([testTypes.types()]);
+            contact = Contact()
+                ..name = (PersonName()..givenName = 'Ada')
+                ..phone = (PhoneNumber()..digits = '+380441234567')
+                ..category = Contact_Category.WORK;
+        });
+
+        test('match equal values by nested field paths', () {
+            expect(eq('name.given_name', 'Ada').compile().matches(contact), isTrue);
+            expect(eq('name.given_name', 'Grace').compile().matches(contact), isFalse);
+            expect(eq('phone.digits', '+380441234567').compile().matches(contact), isTrue);
+        });
+
+        test('compare enum values by names', () {
+            expect(eq('category', Contact_Category.WORK).compile().matches(contact), isTrue);
+            expect(eq('category', Contact_Category.OTHER).compile().matches(contact), isFalse);
+        });
+
+        test('compare numbers regardless of their size', () {
+            var time = LocalTime()
+                ..hours = 13
+                ..minutes = 30;
+            expect(gt('hours', 12).compile().matches(time), isTrue);
+            expect(le('minutes', 29).compile().matches(time), isFalse);
+            expect(ge('minutes', 29.5).compile().matches(time), isTrue);
+            var duration = Duration()
+                ..millis = Int64(1500);
+            expect(eq('millis', 1500).compile().matches(duration), isTrue);
+            expect(lt('millis', Int64(1000)).compile().matches(duration), isFalse);
+        });
+
+        test('compare timestamps', () {
+            var earlier = Timestamp()
+                ..seconds = Int64(100);
+            var later = Timestamp()
+                ..seconds = Int64(100)
+                ..nanos = 1;
+            var context = EventContext()
+                ..timestamp = later;
+            expect(gt('timestamp', earlier).compile().matches(context), isTrue);
+            expect(le('timestamp', earlier).compile().matches(context), isFalse);
+            expect(ge('timestamp', later).compile().matches(context), isTrue);
+        });
+
+        test('apply `all` and `either` composites', () {
+            var workAda = all([eq('category', Contact_Category.WORK),
+                               eq('name.given_name', 'Ada')]).compile();
+            var workGrace = all([eq('category', Contact_Category.WORK),
+                                 eq('name.given_name', 'Grace')]).compile();
+            var adaOrGrace = either([eq('name.given_name', 'Grace'),
+                                     eq('name.given_name', 'Ada')]).compile();
+            expect(workAda.matches(contact), isTrue);
+            expect(workGrace.matches(contact), isFalse);
+            expect(adaOrGrace.matches(contact), isTrue);
+        });
+
+        test('not match missing or repeated fields', () {
+            expect(eq('nickname', 'Ada').compile().matches(contact), isFalse);
+            expect(eq('email', 'ada@example.org').compile().matches(contact), isFalse);
+        });
+
+        test('compare bytes for equality', () {
+            var file = BinaryFile()
+                ..content = [1, 2, 3];
+            expect(eq('content', [1, 2, 3]).compile().matches(file), isTrue);
+            expect(eq('content', [1, 2]).compile().matches(file), isFalse);
+        });
+
+        test('evaluate against different message types', () {
+            var filter = eq('digits', '+380441234567').compile();
+            expect(filter.matches(contact.phone), isTrue);
+            expect(filter.matches(contact), isFalse);
+            expect(filter.matches(contact.phone), isTrue);
+        });
+    });
 }
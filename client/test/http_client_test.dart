@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:http/http.dart' as http;
+import 'package:spine_client/spine/core/user_id.pb.dart';
+import 'package:spine_client/src/http_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+
+const _path = 'command';
+
+void main() {
+    group('HttpClient should', () {
+
+        late FakeBackend backend;
+        late UserId message;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            message = UserId()
+                ..value = 'user';
+        });
+
+        tearDown(() async {
+            await backend.close();
+        });
+
+        test('reuse a single connection for sequential requests', () async {
+            var client = HttpClient(backend.baseUrl);
+            for (var i = 0; i < 20; i++) {
+                await client.postMessage(_path, message);
+            }
+            client.close();
+            expect(backend.requests('/$_path'), equals(20));
+            expect(backend.connections, equals(1));
+        });
+
+        test('send requests via the given transport', () async {
+            var transport = CountingClient();
+            var client = HttpClient(backend.baseUrl, transport: transport);
+            await client.postMessage(_path, message);
+            await client.postMessage(_path, message);
+            client.close();
+            expect(transport.sent, equals(2));
+            expect(transport.closed, isFalse);
+            transport.close();
+        });
+    });
+}
+
+/// An `http.Client` which counts the sent requests.
+class CountingClient extends http.BaseClient {
+
+    final http.Client _delegate = http.Client();
+    int sent = 0;
+    bool closed = false;
+
+    @override
+    Future<http.StreamedResponse> send(http.BaseRequest request) {
+        sent++;
+        return _delegate.send(request);
+    }
+
+    @override
+    void close() {
+        closed = true;
+        _delegate.close();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:http/http.dart' as http;
+import 'package:spine_client/isolate_decoder.dart';
+import 'package:spine_client/spine/client/query.pb.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/query_processor.dart';
+import 'package:test/test.dart';
+
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+List<dynamic> _typeRegistries() => [testTypes.types()];
+
+void main() {
+    group('IsolateDecoder should', () {
+
+        late IsolateDecoder decoder;
+        late String typeUrl;
+
+        setUp(() async {
+            theKnownTypes.registerAll(_typeRegistries());
+            typeUrl = theKnownTypes.typeUrlFrom(Project);
+            decoder = await IsolateDecoder.spawn(_typeRegistries, threshold: 1024);
+        });
+
+        tearDown(() {
+            decoder.close();
+        });
+
+        List<String> projects(int count) => [
+            for (var i = 0; i < count; i++) '{"uuid":"project-$i","name":"Project #$i"}'
+        ];
+
+        test('parse large payloads on the worker isolate', () async {
+            var parsed = await decoder.decode<Project>(typeUrl, projects(5000));
+            expect(parsed, hasLength(5000));
+            expect(parsed.first.uuid, equals('project-0'));
+            expect(parsed.last.name, equals('Project #4999'));
+        });
+
+        test('parse small payloads inline', () async {
+            decoder.close();
+            var parsed = await decoder.decode<Project>(typeUrl, projects(2));
+            expect(parsed.map((project) => project.uuid), equals(['project-0', 'project-1']));
+            expect(decoder.decode<Project>(typeUrl, projects(5000)), throwsStateError);
+        });
+
+        test('parse the decoded values inline', () async {
+            decoder.close();
+            var values = [for (var i = 0; i < 5000; i++) {'uuid': 'project-$i'}];
+            var parsed = await decoder.decode<Project>(typeUrl, values);
+            expect(parsed, hasLength(5000));
+        });
+
+        test('report the malformed payloads', () {
+            var malformed = projects(100)..add('{"uuid":');
+            expect(decoder.decode<Project>(typeUrl, malformed), throwsFormatException);
+        });
+
+        test('parse the direct query responses', () async {
+            var entities = [
+                for (var i = 0; i < 1000; i++)
+                    '{"state":{"@type":"$typeUrl","uuid":"project-$i"}}'
+            ];
+            var body = '{"message":[${entities.join(',')}]}';
+            var query = Query()
+                ..target = (Target()
+                    ..type = typeUrl
+                    ..includeAll = true);
+            var parsed = await DirectResponseProcessor(decoder)
+                .process<Project>(Future.value(http.Response(body, 200)), query)
+                .toList();
+            expect(parsed, hasLength(1000));
+            expect(parsed.last.uuid, equals('project-999'));
+        });
+    });
+}
@@ -45,5 +45,18 @@ void main() {
             NodePath result = parseIntoNewInstance(builderInfo, json);
             expect(result.value, equals(nodePathValue));
         });
+
+        test('merge decoded JSON into a given message', () {
+            var result = NodePath();
+            mergeInto(result, {'value': nodePathValue});
+            expect(result.value, equals(nodePathValue));
+        });
+
+        test('parse decoded JSON into a new message instance created with the given builder', () {
+            var builderInfo = NodePath().info_;
+            NodePath result = parseIntoNewInstance(builderInfo, {'value': nodePathValue,
+                                                                 '@version': 1});
+            expect(result.value, equals(nodePathValue));
+        });
     });
 }
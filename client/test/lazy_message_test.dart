@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:async';
+
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+void main() {
+    group('StateSubscription should', () {
+
+        late FakeBackend backend;
+        late AddingFirebase firebase;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = AddingFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              typeRegistries: [testTypes.types()]);
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        test('parse each update once for all the listeners', () async {
+            var subscription = await clients.asGuest().subscribeTo<Project>().post();
+            var first = subscription.itemAdded.first;
+            var second = subscription.itemAdded.first;
+            var lazy = subscription.lazyItemAdded.first;
+            firebase.add('{"uuid":"p-1","name":"Dart"}');
+            expect(await second, same(await first));
+            expect((await lazy).message, same(await first));
+            subscription.unsubscribe();
+        });
+
+        test('not parse the lazy updates until accessed', () async {
+            var subscription = await clients.asGuest().subscribeTo<Project>().post();
+            var update = subscription.lazyItemAdded.first;
+            firebase.add('{"uuid":"p-1","name":"Dart"}');
+            var lazy = await update;
+            expect(lazy.isParsed, isFalse);
+            expect(lazy.field('name'), equals('Dart'));
+            expect(lazy.isParsed, isFalse);
+            var message = lazy.message;
+            expect(message.uuid, equals('p-1'));
+            expect(lazy.isParsed, isTrue);
+            expect(lazy.message, same(message));
+            subscription.unsubscribe();
+        });
+
+        test('report the malformed updates on access', () async {
+            var subscription = await clients.asGuest().subscribeTo<Project>().post();
+            var update = subscription.lazyItemAdded.first;
+            firebase.add('{"uuid":42}');
+            var lazy = await update;
+            expect(() => lazy.message, throwsA(anything));
+            subscription.unsubscribe();
+        });
+    });
+}
+
+/// A Firebase client which reports the children added by the test.
+class AddingFirebase extends FirebaseClient {
+
+    final StreamController<String> _added = StreamController.broadcast();
+
+    void add(String json) => _added.add(json);
+
+    Future<void> close() => _added.close();
+
+    @override
+    Stream<String> childAdded(String path) => _added.stream;
+
+    @override
+    Stream<String> childChanged(String path) => Stream.empty();
+
+    @override
+    Stream<String> childRemoved(String path) => Stream.empty();
+
+    @override
+    Stream<String> get(String path) => Stream.empty();
+}
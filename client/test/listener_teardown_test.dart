@@ -0,0 +1,158 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:async';
+
+import 'package:spine_client/firebase_client.dart';
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+void main() {
+    group('Subscriptions should', () {
+
+        late FakeBackend backend;
+        late PushingFirebase firebase;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = PushingFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              typeRegistries: [testTypes.types()]);
+        });
+
+        tearDown(() async {
+            firebase.stop();
+            await backend.close();
+        });
+
+        test('detach all the database listeners after mass unsubscription', () async {
+            const count = 1000;
+            var client = clients.asGuest();
+            var subscriptions = await Future.wait(List.generate(count, (i) =>
+                client.subscribeTo<Project>()
+                      .whereIdIn(['project-$i'])
+                      .post()
+            ));
+            var received = 0;
+            for (var subscription in subscriptions) {
+                subscription.itemAdded.listen((_) => received++);
+                subscription.itemChanged.listen((_) => received++);
+            }
+            expect(firebase.listeners, equals(count * 3));
+            await Future.delayed(Duration(milliseconds: 50));
+            expect(received, greaterThan(0));
+
+            for (var subscription in subscriptions) {
+                subscription.unsubscribe();
+            }
+            await Future.delayed(Duration.zero);
+            expect(firebase.listeners, equals(0));
+
+            var pushed = firebase.pushed;
+            var receivedAfterUnsubscribing = received;
+            await Future.delayed(Duration(milliseconds: 50));
+            expect(firebase.pushed, equals(pushed));
+            expect(received, equals(receivedAfterUnsubscribing));
+            await backend.awaitRequests('/subscription/cancel', count);
+        });
+
+        test('detach the database listeners when no longer listened to', () async {
+            var subscription = await clients.asGuest()
+                                            .subscribeTo<Project>()
+                                            .post();
+            var added = subscription.itemAdded.listen((_) {});
+            var removed = subscription.itemRemoved.listen((_) {});
+            expect(firebase.listeners, equals(3));
+            await added.cancel();
+            expect(firebase.listeners, equals(3));
+            await removed.cancel();
+            expect(firebase.listeners, equals(0));
+            subscription.unsubscribe();
+        });
+    });
+}
+
+/// A Firebase client which pushes a new child value to each attached listener every millisecond.
+class PushingFirebase extends FirebaseClient {
+
+    final Set<Timer> _timers = Set();
+    int _pushed = 0;
+
+    /// The number of the currently attached listeners.
+    int get listeners => _timers.length;
+
+    /// The total number of the pushed values.
+    int get pushed => _pushed;
+
+    /// Detaches all the listeners.
+    void stop() {
+        for (var timer in _timers) {
+            timer.cancel();
+        }
+        _timers.clear();
+    }
+
+    Stream<String> _push(String path) {
+        Timer? timer;
+        late StreamController<String> controller;
+        controller = StreamController(
+            onListen: () {
+                var pushing = Timer.periodic(Duration(milliseconds: 1), (timer) {
+                    _pushed++;
+                    controller.add('{"uuid":"${path.hashCode}-${timer.tick}"}');
+                });
+                _timers.add(pushing);
+                timer = pushing;
+            },
+            onCancel: () {
+                timer?.cancel();
+                _timers.remove(timer);
+                timer = null;
+            }
+        );
+        return controller.stream;
+    }
+
+    @override
+    Stream<String> childAdded(String path) => _push(path);
+
+    @override
+    Stream<String> childChanged(String path) => _push(path);
+
+    @override
+    Stream<String> childRemoved(String path) => _push(path);
+
+    @override
+    Stream<String> get(String path) => Stream.empty();
+}
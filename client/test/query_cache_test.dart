@@ -0,0 +1,178 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:async';
+
+import 'package:spine_client/spine_client.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/query_cache.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _query = '/query';
+const _type = 'type.spine.io/spine.test.tools.dart.Project';
+
+void main() {
+    group('QueryCache should', () {
+
+        List<Project> projects(int count) => [
+            for (var i = 0; i < count; i++) Project()..uuid = 'project-$i'
+        ];
+
+        test('return copies of the cached results', () {
+            var cache = QueryCache(Duration(minutes: 1), 100);
+            cache.put('key', _type, cache.generation(_type), projects(2));
+            var first = cache.get<Project>('key')!;
+            first.first.name = 'Changed';
+            var second = cache.get<Project>('key')!;
+            expect(second.map((project) => project.uuid), equals(['project-0', 'project-1']));
+            expect(second.first.name, isEmpty);
+        });
+
+        test('drop the expired results', () async {
+            var cache = QueryCache(Duration(milliseconds: 20), 100);
+            cache.put('key', _type, cache.generation(_type), projects(1));
+            await Future.delayed(Duration(milliseconds: 40));
+            expect(cache.get<Project>('key'), isNull);
+        });
+
+        test('evict the least recently used results', () {
+            var cache = QueryCache(Duration(minutes: 1), 4);
+            cache.put('a', _type, cache.generation(_type), projects(2));
+            cache.put('b', _type, cache.generation(_type), projects(2));
+            cache.get<Project>('a');
+            cache.put('c', _type, cache.generation(_type), projects(2));
+            expect(cache.get<Project>('a'), isNotNull);
+            expect(cache.get<Project>('b'), isNull);
+            expect(cache.get<Project>('c'), isNotNull);
+        });
+
+        test('not cache the results larger than the capacity', () {
+            var cache = QueryCache(Duration(minutes: 1), 4);
+            cache.put('a', _type, cache.generation(_type), projects(5));
+            expect(cache.get<Project>('a'), isNull);
+        });
+
+        test('drop the results of the invalidated type', () {
+            var cache = QueryCache(Duration(minutes: 1), 100);
+            cache.put('a', _type, cache.generation(_type), projects(1));
+            cache.put('b', 'other', cache.generation('other'), projects(1));
+            cache.invalidate(_type);
+            expect(cache.get<Project>('a'), isNull);
+            expect(cache.get<Project>('b'), isNotNull);
+        });
+
+        test('not cache the results obtained before an invalidation', () {
+            var cache = QueryCache(Duration(minutes: 1), 100);
+            var generation = cache.generation(_type);
+            cache.invalidate(_type);
+            cache.put('a', _type, generation, projects(1));
+            expect(cache.get<Project>('a'), isNull);
+        });
+    });
+
+    group('Client with a query cache should', () {
+
+        late FakeBackend backend;
+        late ChangingFirebase firebase;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = ChangingFirebase();
+            clients = Clients(backend.baseUrl,
+                              queryMode: QueryMode.DIRECT,
+                              firebase: firebase,
+                              queryCacheTtl: Duration(minutes: 1),
+                              typeRegistries: [testTypes.types()]);
+            var typeUrl = theKnownTypes.typeUrlFrom(Project);
+            backend.respondTo(_query, '{"message":['
+                '{"state":{"@type":"$typeUrl","uuid":"first"}}'
+                ']}');
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        test('serve a repeated query from the cache', () async {
+            var client = clients.asGuest();
+            await client.select<Project>().post().toList();
+            var projects = await client.select<Project>().post().toList();
+            expect(projects.map((project) => project.uuid), equals(['first']));
+            expect(backend.requests(_query), equals(1));
+        });
+
+        test('not share the cached results between users', () async {
+            await clients.asGuest().select<Project>().post().toList();
+            var user = UserId()
+                ..value = 'user';
+            await clients.onBehalfOf(user).select<Project>().post().toList();
+            expect(backend.requests(_query), equals(2));
+        });
+
+        test('send the query again once an entity of the type changes', () async {
+            var client = clients.asGuest();
+            var subscription = await client.subscribeTo<Project>().post();
+            subscription.itemChanged.listen((_) {});
+            await client.select<Project>().post().toList();
+            firebase.change('{"uuid":"first","name":"Changed"}');
+            await Future.delayed(Duration.zero);
+            await client.select<Project>().post().toList();
+            expect(backend.requests(_query), equals(2));
+            subscription.unsubscribe();
+        });
+    });
+}
+
+/// A Firebase client which reports the changes pushed by the test.
+class ChangingFirebase extends FirebaseClient {
+
+    final StreamController<String> _changed = StreamController.broadcast();
+
+    void change(String json) => _changed.add(json);
+
+    Future<void> close() => _changed.close();
+
+    @override
+    Stream<String> childAdded(String path) => Stream.empty();
+
+    @override
+    Stream<String> childChanged(String path) => _changed.stream;
+
+    @override
+    Stream<String> childRemoved(String path) => Stream.empty();
+
+    @override
+    Stream<String> get(String path) => Stream.empty();
+}
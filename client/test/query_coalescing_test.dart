@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:spine_client/spine_client.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _query = '/query';
+
+void main() {
+    group('Client should', () {
+
+        late FakeBackend backend;
+        late Clients clients;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            clients = Clients(backend.baseUrl,
+                              queryMode: QueryMode.DIRECT,
+                              typeRegistries: [testTypes.types()]);
+            var typeUrl = theKnownTypes.typeUrlFrom(Project);
+            backend.respondTo(_query, '{"message":['
+                '{"state":{"@type":"$typeUrl","uuid":"first"}},'
+                '{"state":{"@type":"$typeUrl","uuid":"second"}}'
+                ']}');
+        });
+
+        tearDown(() async {
+            clients.close();
+            await backend.close();
+        });
+
+        test('send a single request for identical in-flight queries', () async {
+            var client = clients.asGuest();
+            var results = await Future.wait([
+                for (var i = 0; i < 5; i++)
+                    client.select<Project>()
+                          .where(all([eq('name', 'Dart'), eq('uuid', 'first')]))
+                          .post()
+                          .toList()
+            ]);
+            expect(backend.requests(_query), equals(1));
+            for (var projects in results) {
+                expect(projects.map((project) => project.uuid), equals(['first', 'second']));
+            }
+        });
+
+        test('not share the results between the callers', () async {
+            var client = clients.asGuest();
+            var first = client.select<Project>().post().toList();
+            var second = client.select<Project>().post().toList();
+            var firstProjects = await first;
+            firstProjects.first.name = 'Changed';
+            var secondProjects = await second;
+            expect(secondProjects.first.name, isEmpty);
+            expect(backend.requests(_query), equals(1));
+        });
+
+        test('send separate requests for different queries', () async {
+            var client = clients.asGuest();
+            await Future.wait([
+                client.select<Project>().post().toList(),
+                client.select<Project>().whereIds(['first']).post().toList(),
+                client.select<Project>().orderBy('name').limit(1).post().toList()
+            ]);
+            expect(backend.requests(_query), equals(3));
+        });
+
+        test('send a new request once the previous one is complete', () async {
+            var client = clients.asGuest();
+            await client.select<Project>().post().toList();
+            await client.select<Project>().post().toList();
+            expect(backend.requests(_query), equals(2));
+        });
+    });
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:http/http.dart' as http;
+import 'package:spine_client/firebase_client.dart';
+import 'package:spine_client/spine/client/filters.pb.dart';
+import 'package:spine_client/spine/client/query.pb.dart';
+import 'package:spine_client/src/known_types.dart';
+import 'package:spine_client/src/query_processor.dart';
+import 'package:test/test.dart';
+
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+void main() {
+    group('FirebaseResponseProcessor should', () {
+
+        late Query query;
+
+        setUp(() {
+            theKnownTypes.registerAll([testTypes.types()]);
+            query = Query()
+                ..target = (Target()
+                    ..type = theKnownTypes.typeUrlFrom(Project)
+                    ..includeAll = true);
+        });
+
+        Future<http.Response> response(int count) =>
+            Future.value(http.Response('{"path":"query-result","count":"$count"}', 200));
+
+        test('read 1,000 entities at once', () async {
+            var database = BulkFirebase({
+                for (var i = 0; i < 1000; i++)
+                    'key-${i.toString().padLeft(4, '0')}': {'uuid': 'project-$i'}
+            });
+            var projects = await FirebaseResponseProcessor(database)
+                .process<Project>(response(1000), query)
+                .toList();
+            expect(projects, hasLength(1000));
+            expect(projects.first.uuid, equals('project-0'));
+            expect(projects.last.uuid, equals('project-999'));
+            expect(database.bulkReads, equals(1));
+            expect(database.listened, isFalse);
+        });
+
+        test('await the children which are not visible yet one by one', () async {
+            var database = BulkFirebase({'a': '{"uuid":"first"}'},
+                                        listed: ['{"uuid":"first"}', '{"uuid":"second"}']);
+            var projects = await FirebaseResponseProcessor(database)
+                .process<Project>(response(2), query)
+                .toList();
+            expect(projects.map((project) => project.uuid), equals(['first', 'second']));
+            expect(database.listened, isTrue);
+        });
+    });
+
+    group('AdaptiveResponseProcessor should', () {
+
+        late Query query;
+
+        setUp(() {
+            theKnownTypes.registerAll([testTypes.types()]);
+            query = Query()
+                ..target = (Target()
+                    ..type = theKnownTypes.typeUrlFrom(Project)
+                    ..includeAll = true);
+        });
+
+        test('unpack the inline query result without reading the database', () async {
+            var typeUrl = theKnownTypes.typeUrlFrom(Project);
+            var body = '{"direct":{"message":['
+                '{"state":{"@type":"$typeUrl","uuid":"first"}},'
+                '{"state":{"@type":"$typeUrl","uuid":"second"}}'
+                ']}}';
+            var database = BulkFirebase({});
+            var projects = await AdaptiveResponseProcessor(database)
+                .process<Project>(Future.value(http.Response(body, 200)), query)
+                .toList();
+            expect(projects.map((project) => project.uuid), equals(['first', 'second']));
+            expect(database.bulkReads, equals(0));
+            expect(database.listened, isFalse);
+        });
+
+        test('read the query result from the database by reference', () async {
+            var body = '{"firebase":{"path":"query-result","count":"2"}}';
+            var database = BulkFirebase({
+                '0000000001': {'uuid': 'second'},
+                '0000000000': {'uuid': 'first'}
+            });
+            var projects = await AdaptiveResponseProcessor(database)
+                .process<Project>(Future.value(http.Response(body, 200)), query)
+                .toList();
+            expect(projects.map((project) => project.uuid), equals(['first', 'second']));
+            expect(database.bulkReads, equals(1));
+        });
+    });
+}
+
+/// A Firebase client which holds a single node.
+class BulkFirebase extends BulkReadFirebaseClient {
+
+    final Map<String, Object> _children;
+    final List<String> _listed;
+    int bulkReads = 0;
+    bool listened = false;
+
+    BulkFirebase(this._children, {List<String> listed = const []}) : _listed = listed;
+
+    @override
+    Future<Map<String, Object>> readChildren(String path) {
+        bulkReads++;
+        return Future.value(_children);
+    }
+
+    @override
+    Stream<String> get(String path) {
+        listened = true;
+        return Stream.fromIterable(_listed);
+    }
+
+    @override
+    Stream<String> childAdded(String path) => get(path);
+
+    @override
+    Stream<String> childChanged(String path) => Stream.empty();
+
+    @override
+    Stream<String> childRemoved(String path) => Stream.empty();
+}
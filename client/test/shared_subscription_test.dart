@@ -0,0 +1,99 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'fake_firebase_client.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _node = 'subscriptions/s-0';
+
+void main() {
+    group('Shared subscription holders should', () {
+
+        late FakeBackend backend;
+        late NodeFirebase firebase;
+        late Clients clients;
+        late Client client;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            firebase = NodeFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              typeRegistries: [testTypes.types()]);
+            client = clients.asGuest();
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        test('receive nothing once released', () async {
+            var released = await client.subscribeTo<Project>().post();
+            var kept = await client.subscribeTo<Project>().post();
+            var releasedUpdates = <Project>[];
+            var releasedDone = false;
+            released.itemAdded.listen(releasedUpdates.add, onDone: () => releasedDone = true);
+            var keptUpdates = <Project>[];
+            kept.itemAdded.listen(keptUpdates.add);
+
+            firebase.node(_node).added.add('{"uuid":"p-1"}');
+            await Future.delayed(Duration.zero);
+            expect(releasedUpdates.map((project) => project.uuid), equals(['p-1']));
+
+            released.unsubscribe();
+            await Future.delayed(Duration.zero);
+            expect(releasedDone, isTrue);
+            firebase.node(_node).added.add('{"uuid":"p-2"}');
+            await Future.delayed(Duration.zero);
+            expect(releasedUpdates.map((project) => project.uuid), equals(['p-1']));
+            expect(keptUpdates.map((project) => project.uuid), equals(['p-1', 'p-2']));
+            kept.unsubscribe();
+        });
+
+        test('deliver the updates to each holder', () async {
+            var first = await client.subscribeTo<Project>().post();
+            var second = await client.subscribeTo<Project>().post();
+            var received = <String>[];
+            first.itemAdded.listen((project) => received.add('first ${project.uuid}'));
+            second.itemAdded.listen((project) => received.add('second ${project.uuid}'));
+            firebase.node(_node).added.add('{"uuid":"p-1"}');
+            await Future.delayed(Duration.zero);
+            expect(received, unorderedEquals(['first p-1', 'second p-1']));
+            expect(backend.requests('/subscription/create'), equals(1));
+            first.unsubscribe();
+            second.unsubscribe();
+        });
+    });
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'dart:io';
+
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'fake_firebase_client.dart';
+import 'spine/test/tools/dart/commands.pb.dart';
+import 'spine/test/tools/dart/events.pb.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _create = '/subscription/create';
+const _cancel = '/subscription/cancel';
+const _keepUp = '/subscription/keep-up';
+const _keepUpAll = '/subscription/keep-up-all';
+
+void main() {
+    group('Client should', () {
+
+        late FakeBackend backend;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+        });
+
+        tearDown(() async {
+            await backend.close();
+        });
+
+        Clients newClients({Endpoints? endpoints,
+                            Duration keepUpPeriod = const Duration(minutes: 2),
+                            SubscriptionErrorCallback? onSubscriptionError}) =>
+            Clients(backend.baseUrl,
+                    firebase: FakeFirebase(),
+                    endpoints: endpoints,
+                    subscriptionKeepUpPeriod: keepUpPeriod,
+                    onSubscriptionError: onSubscriptionError,
+                    typeRegistries: [testTypes.types()]);
+
+        test('cancel a subscription on the server when it is unsubscribed', () async {
+            var client = newClients().asGuest();
+            var subscription = await client.subscribeTo<Project>().post();
+            subscription.unsubscribe();
+            subscription.unsubscribe();
+            await backend.awaitRequests(_cancel, 1);
+            await Future.delayed(Duration(milliseconds: 50));
+            expect(backend.requests(_cancel), equals(1));
+        });
+
+        test('cancel all the subscriptions of all the clients', () async {
+            var clients = newClients();
+            await clients.asGuest()
+                         .subscribeTo<Project>()
+                         .whereIdIn(['first'])
+                         .post();
+            await clients.asGuest()
+                         .subscribeToEvents<ProjectCreated>()
+                         .post();
+            clients.cancelAllSubscriptions();
+            await backend.awaitRequests(_cancel, 2);
+        });
+
+        test('send the retention of events as the subscription parameters', () async {
+            var client = newClients().asGuest();
+            await client.subscribeToEvents<ProjectCreated>()
+                        .retainLast(10)
+                        .retainFor(Duration(minutes: 5))
+                        .post();
+            expect(backend.parameters(_create), equals({
+                'retention-count': '10',
+                'retention-age': '300'
+            }));
+
+            await client.subscribeToEvents<ProjectCreated>().post();
+            expect(backend.parameters(_create), isEmpty);
+        });
+
+        test('send the conflation interval as the subscription parameter', () async {
+            var client = newClients().asGuest();
+            await client.subscribeTo<Project>()
+                        .conflate(Duration(milliseconds: 250))
+                        .post();
+            expect(backend.parameters(_create), equals({'conflation-interval': '250'}));
+        });
+
+        test('fail all the observations if the server returns fewer subscriptions', () async {
+            backend.respondTo('/command/observe',
+                              '{"ack":{},"subscription":[{"subscription":{"id":{"value":"s"}},'
+                              '"nodePath":{"value":"subscriptions/s"}}]}');
+            var clients = newClients(endpoints: Endpoints(postAndObserve: 'command/observe'));
+            var request = clients.asGuest()
+                                 .command(CreateProject());
+            var first = request.observeEvents<ProjectCreated>();
+            var second = request.observeEvents<ProjectCreated>();
+            await request.post();
+            await expectLater(first, throwsStateError);
+            await expectLater(second, throwsStateError);
+            await backend.awaitRequests(_cancel, 1);
+        });
+
+        test('keep up the active subscriptions one by one', () async {
+            var clients = newClients(keepUpPeriod: Duration(milliseconds: 100));
+            var client = clients.asGuest();
+            await client.subscribeTo<Project>().whereIdIn(['first']).post();
+            await client.subscribeTo<Project>().whereIdIn(['second']).post();
+            await backend.awaitRequests(_keepUp, 2);
+            expect(backend.requests(_keepUpAll), equals(0));
+            clients.cancelAllSubscriptions();
+            await backend.awaitRequests(_cancel, 2);
+        });
+
+        test('keep up the active subscriptions in a batch', () async {
+            var endpoints = Endpoints(
+                subscription: SubscriptionEndpoints(keepUpAll: 'subscription/keep-up-all')
+            );
+            var clients = newClients(endpoints: endpoints,
+                                     keepUpPeriod: Duration(milliseconds: 100));
+            await clients.asGuest().subscribeTo<Project>().whereIdIn(['first']).post();
+            await clients.asGuest().subscribeTo<Project>().whereIdIn(['second']).post();
+            await backend.awaitRequests(_keepUpAll, 1);
+            expect(backend.requests(_keepUp), equals(0));
+            clients.cancelAllSubscriptions();
+            await backend.awaitRequests(_cancel, 2);
+        });
+
+        test('report the errors of keeping up and cancelling subscriptions', () async {
+            var errors = <Object>[];
+            var clients = newClients(keepUpPeriod: Duration(milliseconds: 50),
+                                     onSubscriptionError: (error, _) => errors.add(error));
+            var subscription = await clients.asGuest().subscribeTo<Project>().post();
+            await backend.close();
+            await Future.delayed(Duration(milliseconds: 200));
+            expect(errors, isNotEmpty);
+            var keepUpErrors = errors.length;
+            subscription.unsubscribe();
+            await Future.delayed(Duration(milliseconds: 50));
+            expect(errors.length, greaterThan(keepUpErrors));
+            clients.close();
+        });
+
+        test('not retain subscriptions across 10k create and cancel cycles', () async {
+            const cycles = 10000;
+            const batch = 100;
+            var clients = newClients(keepUpPeriod: Duration(milliseconds: 200));
+            int? warmRss;
+            for (var start = 0; start < cycles; start += batch) {
+                var client = clients.asGuest();
+                var subscriptions = await Future.wait(List.generate(batch, (i) =>
+                    client.subscribeTo<Project>()
+                          .whereIdIn(['project-${start + i}'])
+                          .post()
+                ));
+                for (var subscription in subscriptions) {
+                    subscription.unsubscribe();
+                }
+                if (start == cycles ~/ 5) {
+                    warmRss = ProcessInfo.currentRss;
+                }
+            }
+            await backend.awaitRequests(_cancel, cycles);
+            expect(backend.requests(_create), equals(cycles));
+
+            var keepUps = backend.requests(_keepUp);
+            await Future.delayed(Duration(milliseconds: 500));
+            expect(backend.requests(_keepUp), equals(keepUps));
+
+            var growth = ProcessInfo.currentRss - warmRss!;
+            expect(growth, lessThan(64 * 1024 * 1024));
+        });
+    });
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+@TestOn('vm')
+
+import 'package:spine_client/spine_client.dart';
+import 'package:test/test.dart';
+
+import 'fake_backend.dart';
+import 'fake_firebase_client.dart';
+import 'spine/test/tools/dart/project.pb.dart';
+import 'types.dart' as testTypes;
+
+const _liveQuery = 'subscription/live-query';
+const _resume = 'subscription/resume';
+const _cancel = '/subscription/cancel';
+
+void main() {
+    group('Client should', () {
+
+        late FakeBackend backend;
+        late NodeFirebase firebase;
+        late Clients clients;
+        late Client client;
+
+        setUp(() async {
+            backend = await FakeBackend.start();
+            backend.respondTo('/$_liveQuery', _firebaseSubscription('previous'));
+            backend.respondTo('/$_resume', _firebaseSubscription('resumed'));
+            firebase = NodeFirebase();
+            clients = Clients(backend.baseUrl,
+                              firebase: firebase,
+                              endpoints: Endpoints(
+                                  subscription: SubscriptionEndpoints(liveQuery: _liveQuery,
+                                                                      resume: _resume)
+                              ),
+                              typeRegistries: [testTypes.types()]);
+            client = clients.asGuest();
+        });
+
+        tearDown(() async {
+            clients.close();
+            await firebase.close();
+            await backend.close();
+        });
+
+        test('not deliver the deletion of the previous node when resuming', () async {
+            var previous = await client.liveQuery<Project>().post();
+            var removed = <Project>[];
+            previous.itemRemoved.listen(removed.add);
+            var added = previous.itemAdded.first;
+            var state = '{"uuid":"p-1","@key":"k-1","@version":1}';
+            firebase.node('previous').added.add(state);
+            await added;
+
+            var resuming = client.resume(previous);
+            await backend.awaitRequests('/$_resume', 1);
+            firebase.node('previous').removed.add(state);
+            var resumed = await resuming;
+            expect(previous.closed, isTrue);
+            expect(removed, isEmpty);
+            expect(resumed.seenVersion, equals(1));
+
+            var changed = resumed.itemChanged.first;
+            var gone = resumed.itemRemoved.first;
+            firebase.node('resumed').changed.add('{"uuid":"p-1","@key":"k-1","@version":2}');
+            expect((await changed).uuid, equals('p-1'));
+            firebase.node('resumed').added.add('{"uuid":"p-1","@key":"k-1","@version":3,'
+                                               '"@removed":true}');
+            expect((await gone).uuid, equals('p-1'));
+            resumed.unsubscribe();
+        });
+
+        test('deliver the held updates if the subscription is not resumed', () async {
+            var previous = await client.liveQuery<Project>().post();
+            var changed = <Project>[];
+            previous.itemChanged.listen(changed.add);
+            backend.respondTo('/$_resume', 'not a subscription');
+
+            var resuming = client.resume(previous);
+            firebase.node('previous').added.add('{"uuid":"p-1","@key":"k-1","@version":1}');
+            firebase.node('previous').changed.add('{"uuid":"p-1","@key":"k-1","@version":2}');
+            await Future.delayed(Duration.zero);
+            expect(changed, isEmpty);
+            await expectLater(resuming, throwsA(isNotNull));
+            expect(previous.closed, isFalse);
+            expect(changed.map((project) => project.uuid), equals(['p-1']));
+            previous.unsubscribe();
+        });
+
+        test('resume a shared subscription for all of its holders', () async {
+            var first = await client.subscribeTo<Project>().post();
+            var second = await client.subscribeTo<Project>().post();
+            var changed = <Project>[];
+            second.itemChanged.listen(changed.add);
+            var state = '{"uuid":"p-1","@key":"k-1","@version":1}';
+            firebase.node('subscriptions/s-0').added.add(state);
+            await Future.delayed(Duration.zero);
+
+            var resumed = await client.resume(first);
+            expect(first.closed, isTrue);
+            expect(second.closed, isFalse);
+            expect(resumed.seenVersion, equals(1));
+            firebase.node('resumed').changed.add('{"uuid":"p-1","@key":"k-1","@version":2}');
+            await Future.delayed(Duration.zero);
+            expect(changed.map((project) => project.uuid), equals(['p-1']));
+
+            var resumedSecond = await client.resume(second);
+            expect(backend.requests('/$_resume'), equals(1));
+            resumed.unsubscribe();
+            await Future.delayed(Duration(milliseconds: 50));
+            expect(backend.requests(_cancel), equals(0));
+            resumedSecond.unsubscribe();
+            await backend.awaitRequests(_cancel, 1);
+        });
+
+        test('resume the holders of a shared subscription with a single request', () async {
+            var first = await client.subscribeTo<Project>().post();
+            var second = await client.subscribeTo<Project>().post();
+            var resumed = await Future.wait([client.resume(first), client.resume(second)]);
+            expect(backend.requests('/$_resume'), equals(1));
+            expect(resumed[0].subscription, equals(resumed[1].subscription));
+            resumed.forEach((subscription) => subscription.unsubscribe());
+            await backend.awaitRequests(_cancel, 1);
+        });
+    });
+}
+
+String _firebaseSubscription(String node) =>
+    '{"subscription":{"id":{"value":"$node"}},"nodePath":{"value":"$node"}}';
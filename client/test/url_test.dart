@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:spine_client/src/url.dart';
+import 'package:test/test.dart';
+
+void main() {
+    group('Url should', () {
+
+        test('concatenate host and path', () {
+            var url = Url.from('https://example.org/', '/query');
+            expect(url.stringUrl, equals('https://example.org/query'));
+        });
+
+        test('add query parameters', () {
+            var url = Url.from('https://example.org', 'subscription/create')
+                         .withParameters({'retention-count': '10'});
+            expect(url.asUri.path, equals('/subscription/create'));
+            expect(url.asUri.queryParameters, equals({'retention-count': '10'}));
+        });
+
+        test('keep existing query parameters', () {
+            var url = Url('https://example.org/query?tenant=acme')
+                .withParameters({'mode': 'direct'});
+            expect(url.asUri.queryParameters, equals({'tenant': 'acme', 'mode': 'direct'}));
+        });
+
+        test('stay unchanged if no parameters are added', () {
+            var url = Url('https://example.org/command');
+            expect(url.withParameters({}), same(url));
+        });
+    });
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import 'package:http/http.dart' as http;
+import 'package:spine_client/client.dart';
+
+import '../integration-test/endpoints.dart';
+import '../integration-test/spine/web/test/given/project.pb.dart';
+import '../integration-test/types.dart' as testTypes;
+
+const _warmUpRequests = 50;
+const _measuredRequests = 1000;
+
+/// Measures the per-request latency of queries to the local test app with and without reusing
+/// the connections.
+///
+/// Run the test app, e.g. via `./gradlew :test-app:appBeforeIntegrationTest`, and then
+/// `dart run benchmark/http_client_benchmark.dart`, or run `./gradlew :client-test:benchmark`.
+///
+Future<void> main() async {
+    var pooled = await _measure(null);
+    var oneShot = await _measure(_NewConnectionPerRequest());
+    print('Per-request latency over $_measuredRequests direct queries:');
+    print('  with connection reuse:    $pooled');
+    print('  without connection reuse: $oneShot');
+}
+
+Future<_Latency> _measure(http.Client? transport) async {
+    var clients = Clients(BACKEND,
+                          queryMode: QueryMode.DIRECT,
+                          endpoints: Endpoints(query: 'direct-query'),
+                          transport: transport,
+                          typeRegistries: [testTypes.types()]);
+    var client = clients.asGuest();
+    for (var i = 0; i < _warmUpRequests; i++) {
+        await client.select<Project>().post().toList();
+    }
+    var samples = <Duration>[];
+    var stopwatch = Stopwatch();
+    for (var i = 0; i < _measuredRequests; i++) {
+        stopwatch
+            ..reset()
+            ..start();
+        await client.select<Project>().post().toList();
+        stopwatch.stop();
+        samples.add(stopwatch.elapsed);
+    }
+    clients.close();
+    transport?.close();
+    return _Latency(samples);
+}
+
+/// Latency statistics of a series of requests.
+class _Latency {
+
+    final List<Duration> _samples;
+
+    _Latency(List<Duration> samples) : _samples = List.of(samples)..sort();
+
+    Duration get mean =>
+        _samples.reduce((a, b) => a + b) ~/ _samples.length;
+
+    Duration percentile(int p) => _samples[(_samples.length - 1) * p ~/ 100];
+
+    @override
+    String toString() => 'mean ${_ms(mean)}, '
+                         'p50 ${_ms(percentile(50))}, '
+                         'p95 ${_ms(percentile(95))}, '
+                         'p99 ${_ms(percentile(99))}';
+
+    static String _ms(Duration duration) =>
+        '${(duration.inMicroseconds / 1000).toStringAsFixed(2)} ms';
+}
+
+/// An `http.Client` which opens a new connection for each request and closes it afterwards.
+///
+/// This is how the requests were sent before the connections were pooled.
+///
+class _NewConnectionPerRequest extends http.BaseClient {
+
+    @override
+    Future<http.StreamedResponse> send(http.BaseRequest request) async {
+        var client = http.Client();
+        try {
+            var response = await client.send(request);
+            var body = await response.stream.toBytes();
+            return http.StreamedResponse(Stream.value(body),
+                                         response.statusCode,
+                                         contentLength: body.length,
+                                         request: request,
+                                         headers: response.headers,
+                                         reasonPhrase: response.reasonPhrase);
+        } finally {
+            client.close();
+        }
+    }
+}
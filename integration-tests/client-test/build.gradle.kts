@@ -60,6 +60,13 @@ val integrationTest by tasks.creating(Exec::class) {
     finalizedBy(":test-app:appAfterIntegrationTest")
 }
 
+val benchmark by tasks.creating(Exec::class) {
+    description = "Measures the latency of the requests to the test app."
+    commandLine("dart", "run", "benchmark/http_client_benchmark.dart")
+    dependsOn("resolveDependencies", ":test-app:appBeforeIntegrationTest")
+    finalizedBy(":test-app:appAfterIntegrationTest")
+}
+
 protoDart {
     testDir.set(project.layout.projectDirectory.dir(integrationTestDir))
 }
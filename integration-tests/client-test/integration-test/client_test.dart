@@ -126,6 +126,29 @@ void main() {
             expect(subscription.closed, equals(true));
         });
 
+        test('post commands and subscribe to related events in a single request', () async {
+            clients = Clients(BACKEND,
+                              firebase: firebaseClient,
+                              endpoints: Endpoints(
+                                  postAndObserve: 'command/observe'
+                              ),
+                              typeRegistries: [testTypes.types()]);
+            var taskId = TaskId()
+                ..value = newUuid();
+            var cmd = CreateTask()
+                ..id = taskId
+                ..name = 'Task name 43'
+                ..description = 'Post and observe test';
+            var client = clients.onBehalfOf(actor);
+            var request = client.command(cmd);
+            var taskCreated = request.observeEvents<TaskCreated>()
+                                     .then((s) => s.eventMessages.first);
+            await request.post();
+
+            var event = await taskCreated;
+            expect(event.id, equals(taskId));
+        });
+
         test('query server directly', () async {
             clients = Clients(BACKEND,
                               queryMode: QueryMode.DIRECT,
@@ -161,6 +184,117 @@ void main() {
             expect(tasks[0].name, equals(cmd.name));
         });
 
+        test('obtain current entities and their changes via a live query', () async {
+            clients = Clients(BACKEND,
+                              firebase: firebaseClient,
+                              endpoints: Endpoints(
+                                  subscription: SubscriptionEndpoints(
+                                      liveQuery: 'subscription/live-query'
+                                  )
+                              ),
+                              typeRegistries: [testTypes.types()]);
+            var client = clients.onBehalfOf(actor);
+            var taskId = TaskId()
+                ..value = newUuid();
+            var createTaskCmd = CreateTask()
+                ..id = taskId
+                ..name = 'Task name 4'
+                ..description = 'live query test';
+            var createTaskRequest = client.command(createTaskCmd);
+            var taskCreated = createTaskRequest.observeEvents<TaskCreated>()
+                                               .then((s) => s.eventMessages.first);
+            await createTaskRequest.post();
+            await taskCreated;
+            await _sleep();
+
+            var liveQuery = await client.liveQuery<Task>()
+                                        .whereIdIn([taskId])
+                                        .post();
+            var existingTask = await liveQuery.itemAdded.first;
+            expect(existingTask.name, equals(createTaskCmd.name));
+
+            var itemChanged = liveQuery.itemChanged;
+            var renameTaskCmd = RenameTask()
+                ..id = taskId
+                ..name = 'Renamed live task';
+            client.command(renameTaskCmd)
+                  .postAndForget();
+            var changedTask = await itemChanged.first;
+            expect(changedTask.name, equals(renameTaskCmd.name));
+            liveQuery.unsubscribe();
+        });
+
+        test('resume a subscription with the changes made while disconnected', () async {
+            clients = Clients(BACKEND,
+                              firebase: firebaseClient,
+                              endpoints: Endpoints(
+                                  subscription: SubscriptionEndpoints(
+                                      liveQuery: 'subscription/live-query',
+                                      resume: 'subscription/resume'
+                                  )
+                              ),
+                              typeRegistries: [testTypes.types()]);
+            var client = clients.onBehalfOf(actor);
+            var taskId = TaskId()
+                ..value = newUuid();
+            var createTaskCmd = CreateTask()
+                ..id = taskId
+                ..name = 'Task name 5'
+                ..description = 'resume test';
+            var createTaskRequest = client.command(createTaskCmd);
+            var taskCreated = createTaskRequest.observeEvents<TaskCreated>()
+                                               .then((s) => s.eventMessages.first);
+            await createTaskRequest.post();
+            await taskCreated;
+            await _sleep();
+
+            var liveQuery = await client.liveQuery<Task>()
+                                        .whereIdIn([taskId])
+                                        .post();
+            await liveQuery.itemAdded.first;
+            expect(liveQuery.seenVersion, isNotNull);
+
+            var renameTaskCmd = RenameTask()
+                ..id = taskId
+                ..name = 'Renamed while disconnected';
+            await client.command(renameTaskCmd)
+                        .postAndForget();
+            await _sleep();
+
+            var resumed = await client.resume(liveQuery);
+            var changedTask = await resumed.itemChanged.first;
+            expect(changedTask.name, equals(renameTaskCmd.name));
+            resumed.unsubscribe();
+        });
+
+        test('keep only the retained events in an event subscription', () async {
+            var recordingClient = NodeRecordingClient(FirebaseApp().database);
+            clients = Clients(BACKEND,
+                              firebase: recordingClient,
+                              typeRegistries: [testTypes.types()]);
+            var client = clients.onBehalfOf(actor);
+            var subscription = await client.subscribeToEvents<TaskCreated>()
+                                           .retainLast(1)
+                                           .post();
+            var received = subscription.events.take(3).toList();
+            for (var i = 0; i < 3; i++) {
+                var createTaskCmd = CreateTask()
+                    ..id = (TaskId()..value = newUuid())
+                    ..name = 'Task name 7.$i'
+                    ..description = 'event retention test';
+                await client.command(createTaskCmd)
+                            .postAndForget();
+            }
+            await received;
+            var node = recordingClient.nodes.single;
+            expect(await recordingClient.readChildren(node), hasLength(3));
+
+            // Wait for the server to compact the node, which happens every 30 seconds.
+            await Future.delayed(Duration(seconds: 40));
+            expect(await recordingClient.readChildren(node), hasLength(1));
+            subscription.unsubscribe();
+        }, timeout: Timeout(Duration(minutes: 2)));
+
         test('subscribe to entity changes', () async {
             var client = clients.onBehalfOf(actor);
             StateSubscription<Task> entitySubscription = await client.subscribeTo<Task>().post();
@@ -192,6 +326,59 @@ void main() {
             entitySubscription.unsubscribe();
         });
 
+        test('subscribe to entity changes via the routed subscriptions', () async {
+            clients = Clients(BACKEND,
+                              firebase: firebaseClient,
+                              endpoints: Endpoints(
+                                  subscription: SubscriptionEndpoints(
+                                      create: 'subscription/create-routed'
+                                  )
+                              ),
+                              typeRegistries: [testTypes.types()]);
+            var client = clients.onBehalfOf(actor);
+            var taskId = TaskId()
+                ..value = newUuid();
+            var entitySubscription = await client.subscribeTo<Task>()
+                                                 .whereIdIn([taskId])
+                                                 .post();
+            var itemAdded = entitySubscription.itemAdded;
+            var createTaskCmd = CreateTask()
+                ..id = taskId
+                ..name = 'Task name 8'
+                ..description = 'routed subscription test';
+            client.command(createTaskCmd)
+                  .postAndForget();
+            var newTask = await itemAdded.first;
+            expect(newTask.name, equals(createTaskCmd.name));
+            expect(entitySubscription.seenVersion, isNotNull);
+            entitySubscription.unsubscribe();
+        });
+
+        test('share a subscription between equivalent requests', () async {
+            var client = clients.onBehalfOf(actor);
+            var taskId = TaskId()
+                ..value = newUuid();
+            var first = await client.subscribeTo<Task>()
+                                    .whereIdIn([taskId])
+                                    .post();
+            var second = await client.subscribeTo<Task>()
+                                     .whereIdIn([taskId])
+                                     .post();
+            expect(second.subscription.id, equals(first.subscription.id));
+
+            var itemAdded = second.itemAdded;
+            first.unsubscribe();
+            var createTaskCmd = CreateTask()
+                ..id = taskId
+                ..name = 'Task name 6'
+                ..description = 'shared subscription test';
+            client.command(createTaskCmd)
+                  .postAndForget();
+            var newTask = await itemAdded.first;
+            expect(newTask.name, equals(createTaskCmd.name));
+            second.unsubscribe();
+        });
+
         test('query entities by column values', () async {
             var newTasks = await clients.asGuest()
                                         .subscribeTo<UserTasks>()
@@ -24,12 +24,17 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import 'dart:convert';
+
 import 'package:firebase_dart/firebase_dart.dart' as fb;
 import 'package:spine_client/firebase_client.dart';
 
 /// An implementation of [FirebaseClient] that uses dart Firebase implementation.
 ///
-class DartFirebaseClient implements FirebaseClient {
+/// The node values are also delivered as maps, which the Firebase implementation decodes anyway.
+/// The query results are read at once.
+///
+class DartFirebaseClient implements StructuredFirebaseClient, BulkReadFirebaseClient {
 
     final fb.FirebaseDatabase _db;
 
@@ -42,32 +47,116 @@ class DartFirebaseClient implements FirebaseClient {
 
     @override
     Stream<String> childAdded(String path) {
-        return _db
-            .reference()
-            .child(path)
+        return _node(path)
             .onChildAdded
             .map(_toJsonString);
     }
 
     @override
     Stream<String> childChanged(String path) {
-        return _db
-            .reference()
-            .child(path)
+        return _node(path)
             .onChildChanged
             .map(_toJsonString);
     }
 
     @override
     Stream<String> childRemoved(String path) {
-        return _db
-            .reference()
-            .child(path)
+        return _node(path)
             .onChildRemoved
             .map(_toJsonString);
     }
 
+    @override
+    Stream<Map<String, dynamic>> getMaps(String path) {
+        return childAddedMaps(path);
+    }
+
+    @override
+    Stream<Map<String, dynamic>> childAddedMaps(String path) {
+        return _node(path)
+            .onChildAdded
+            .map(_toMap);
+    }
+
+    @override
+    Stream<Map<String, dynamic>> childChangedMaps(String path) {
+        return _node(path)
+            .onChildChanged
+            .map(_toMap);
+    }
+
+    @override
+    Stream<Map<String, dynamic>> childRemovedMaps(String path) {
+        return _node(path)
+            .onChildRemoved
+            .map(_toMap);
+    }
+
+    @override
+    Future<Map<String, Object>> readChildren(String path) {
+        return _node(path).once().then((snapshot) {
+            var value = snapshot.value;
+            if (value is Map) {
+                return value.cast<String, Object>();
+            }
+            if (value is List) {
+                return _indexed(value);
+            }
+            return <String, Object>{};
+        });
+    }
+
+    /// Obtains the children of a node with integer-like keys, which Firebase returns as a list.
+    ///
+    /// The missing indices are `null` in the list and are skipped. The keys are zero-padded, so
+    /// that their order matches the order of the indices.
+    ///
+    static Map<String, Object> _indexed(List<dynamic> values) {
+        var children = <String, Object>{};
+        for (var i = 0; i < values.length; i++) {
+            var value = values[i];
+            if (value != null) {
+                children[i.toString().padLeft(10, '0')] = value as Object;
+            }
+        }
+        return children;
+    }
+
+    fb.DatabaseReference _node(String path) {
+        return _db
+            .reference()
+            .child(path);
+    }
+
     String _toJsonString(fb.Event event) {
-        return event.snapshot.value.toString();
+        var value = event.snapshot.value;
+        return value is String ? value : json.encode(value);
+    }
+
+    Map<String, dynamic> _toMap(fb.Event event) {
+        var value = event.snapshot.value;
+        var map = value is String ? json.decode(value) : value;
+        return (map as Map).cast<String, dynamic>();
+    }
+}
+
+/// A [DartFirebaseClient] which remembers the nodes whose children are listened to.
+///
+class NodeRecordingClient extends DartFirebaseClient {
+
+    final Set<String> nodes = Set();
+
+    NodeRecordingClient(fb.FirebaseDatabase db) : super(db);
+
+    @override
+    Stream<String> childAdded(String path) {
+        nodes.add(path);
+        return super.childAdded(path);
+    }
+
+    @override
+    Stream<Map<String, dynamic>> childAddedMaps(String path) {
+        nodes.add(path);
+        return super.childAddedMaps(path);
     }
 }
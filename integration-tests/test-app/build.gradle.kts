@@ -24,6 +24,8 @@
  * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+import io.spine.gradle.internal.Deps
+
 buildscript {
 
     io.spine.gradle.internal.DependencyResolution.defaultRepositories(repositories)
@@ -58,7 +60,8 @@ val generatedTestSpineDir = "$generatedRootDir/test/spine"
 
 sourceSets {
     main {
-        proto.srcDirs("$sourcesRootDir/main/proto")
+        // Along with its own protos, the app compiles the protos shared with the Dart client.
+        proto.srcDirs("$sourcesRootDir/main/proto", "$rootDir/client/src/main/proto")
         java.srcDirs(generatedJavaDir, "$sourcesRootDir/main/java", generatedSpineDir)
         resources.srcDirs("$generatedRootDir/main/resources")
     }
@@ -73,6 +76,13 @@ val spineWebVersion: String by extra
 
 dependencies {
     implementation("io.spine.gcloud:spine-firebase-web:$spineWebVersion")
+    Deps.test.junit5Api.forEach { testImplementation(it) }
+    Deps.test.truth.forEach { testImplementation(it) }
+    testRuntimeOnly(Deps.test.junit5Runner)
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 configurations.all { resolutionStrategy { force("com.google.code.gson:gson:2.7") } }
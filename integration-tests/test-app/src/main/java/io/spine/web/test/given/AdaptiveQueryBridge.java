@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import io.spine.client.EntityStateWithVersion;
+import io.spine.client.Query;
+import io.spine.client.QueryResponse;
+import io.spine.logging.Logging;
+import io.spine.web.dart.AdaptiveQueryResponse;
+import io.spine.web.firebase.NodePath;
+import io.spine.web.firebase.query.FirebaseQueryResponse;
+import io.spine.web.query.BlockingQueryBridge;
+import io.spine.web.query.QueryBridge;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.base.Identifier.newUuid;
+import static io.spine.json.Json.toCompactJson;
+import static io.spine.protobuf.AnyPacker.unpack;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * A {@link QueryBridge} which picks the delivery of the query result depending on its size.
+ *
+ * <p>The query is executed by a {@link BlockingQueryBridge}. If the serialized result does not
+ * exceed the {@linkplain #inlineSizeLimit limit}, it is returned inline. Otherwise, the entity
+ * states are written to a new database node at once, and the reference to the node is returned.
+ *
+ * <p>The children of the node are keyed by the zero-padded index of the entity in the result, so
+ * that the order of the keys matches the order of the entities. The keys are prefixed, since
+ * Firebase turns a node with integer-like keys into an array.
+ *
+ * <p>The node is deleted once the {@linkplain #RESULT_TTL time} given to the client to read it
+ * passes.
+ */
+final class AdaptiveQueryBridge implements QueryBridge<AdaptiveQueryResponse>, Logging {
+
+    private static final String NODE_PREFIX = "query-results/";
+    private static final String KEY_FORMAT = "r%010d";
+    private static final Duration RESULT_TTL = Duration.ofMinutes(1);
+
+    private final BlockingQueryBridge blockingBridge;
+    private final DeltaWritingClient client;
+    private final int inlineSizeLimit;
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("query-result-expiry")
+                                      .setDaemon(true)
+                                      .build()
+    );
+
+    /**
+     * Creates a new bridge.
+     *
+     * @param blockingBridge
+     *         the bridge which executes the queries
+     * @param client
+     *         the client which writes the large query results
+     * @param inlineSizeLimit
+     *         the maximum size of the serialized query result, in bytes, which is returned inline
+     */
+    AdaptiveQueryBridge(BlockingQueryBridge blockingBridge,
+                        DeltaWritingClient client,
+                        int inlineSizeLimit) {
+        checkArgument(inlineSizeLimit >= 0,
+                      "The inline size limit must not be negative, got `%s`.", inlineSizeLimit);
+        this.blockingBridge = checkNotNull(blockingBridge);
+        this.client = checkNotNull(client);
+        this.inlineSizeLimit = inlineSizeLimit;
+    }
+
+    @Override
+    public AdaptiveQueryResponse send(Query query) {
+        QueryResponse response = blockingBridge.send(query);
+        if (response.getSerializedSize() <= inlineSizeLimit) {
+            return AdaptiveQueryResponse
+                    .newBuilder()
+                    .setDirect(response)
+                    .build();
+        }
+        NodePath node = NodePath
+                .newBuilder()
+                .setValue(NODE_PREFIX + newUuid())
+                .build();
+        List<EntityStateWithVersion> entities = response.getMessageList();
+        Map<String, JsonElement> children = new HashMap<>();
+        JsonParser parser = new JsonParser();
+        for (int i = 0; i < entities.size(); i++) {
+            String state = toCompactJson(unpack(entities.get(i)
+                                                        .getState()));
+            children.put(String.format(KEY_FORMAT, i), parser.parse(state));
+        }
+        client.createChildren(node, children);
+        executor.schedule(() -> delete(node), RESULT_TTL.toMillis(), MILLISECONDS);
+        FirebaseQueryResponse reference = FirebaseQueryResponse
+                .newBuilder()
+                .setPath(node.getValue())
+                .setCount(entities.size())
+                .build();
+        return AdaptiveQueryResponse
+                .newBuilder()
+                .setFirebase(reference)
+                .build();
+    }
+
+    private void delete(NodePath node) {
+        try {
+            client.delete(node);
+        } catch (RuntimeException e) {
+            _warn().withCause(e)
+                   .log("Unable to delete the query result node `%s`.", node.getValue());
+        }
+    }
+}
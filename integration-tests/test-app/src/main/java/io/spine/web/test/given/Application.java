@@ -30,6 +30,8 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.database.FirebaseDatabase;
+import io.spine.client.Subscription;
+import io.spine.client.Topic;
 import io.spine.io.Resource;
 import io.spine.server.BoundedContext;
 import io.spine.server.CommandService;
@@ -42,6 +44,9 @@ import io.spine.web.firebase.subscription.FirebaseSubscriptionBridge;
 import io.spine.web.query.BlockingQueryBridge;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.spine.io.Resource.file;
@@ -55,15 +60,36 @@ final class Application {
 
     private static final String DATABASE_URL = "https://spine-dev.firebaseio.com/";
 
+    /**
+     * The maximum size, in bytes, of the query results which are delivered inline by
+     * the {@link AdaptiveQueryBridge}.
+     */
+    private static final int INLINE_QUERY_RESULT_LIMIT = 64 * 1024;
+
+    /**
+     * The time after which the routed subscriptions which are not kept up are cancelled.
+     *
+     * <p>The clients keep up their subscriptions every two minutes by default. The timeout leaves
+     * room for a single missed keep-up.
+     */
+    private static final Duration ROUTE_EXPIRY = Duration.ofMinutes(5);
+
     private final CommandService commandService;
     private final FirebaseQueryBridge fbQueryBridge;
     private final BlockingQueryBridge blockingQueryBridge;
+    private final AdaptiveQueryBridge adaptiveQueryBridge;
     private final FirebaseSubscriptionBridge subscriptionBridge;
+    private final StateRouter stateRouter;
+    private final EventRouter eventRouter;
+    private final DeltaWritingClient deltaWritingClient;
+    private final EventNodeCompactor eventNodeCompactor;
 
     private Application(CommandService commandService,
                         QueryService queryService,
                         SubscriptionService subscriptionService,
-                        FirebaseClient client) {
+                        FirebaseClient client,
+                        DeltaWritingClient deltaWritingClient,
+                        EventNodeCompactor eventNodeCompactor) {
         this.commandService = commandService;
         this.fbQueryBridge = FirebaseQueryBridge
                 .newBuilder()
@@ -71,11 +97,21 @@ final class Application {
                 .setFirebaseClient(client)
                 .build();
         this.blockingQueryBridge = new BlockingQueryBridge(queryService);
+        this.adaptiveQueryBridge = new AdaptiveQueryBridge(blockingQueryBridge,
+                                                           deltaWritingClient,
+                                                           INLINE_QUERY_RESULT_LIMIT);
         this.subscriptionBridge = FirebaseSubscriptionBridge
                 .newBuilder()
                 .setSubscriptionService(subscriptionService)
                 .setFirebaseClient(client)
                 .build();
+        this.stateRouter =
+                new StateRouter(subscriptionService, queryService, deltaWritingClient);
+        this.stateRouter.expireAfter(ROUTE_EXPIRY);
+        this.eventRouter = new EventRouter(subscriptionService, deltaWritingClient);
+        this.eventRouter.expireAfter(ROUTE_EXPIRY);
+        this.deltaWritingClient = deltaWritingClient;
+        this.eventNodeCompactor = eventNodeCompactor;
     }
 
     static Application create(BoundedContext boundedContext) {
@@ -92,11 +128,13 @@ final class Application {
                 .newBuilder()
                 .add(boundedContext)
                 .build();
-        FirebaseClient retryingClient = buildClient();
-        return new Application(commandService, queryService, subscriptionService, retryingClient);
+        DeltaWritingClient deltaClient = buildClient();
+        EventNodeCompactor compactor = EventNodeCompactor.start(deltaClient);
+        return new Application(commandService, queryService, subscriptionService,
+                               deltaClient, deltaClient, compactor);
     }
 
-    private static FirebaseClient buildClient() {
+    private static DeltaWritingClient buildClient() {
         Resource googleCredentials = file("spine-dev.json", Application.class.getClassLoader());
 
         // Same credentials but represented with different Java objects.
@@ -116,7 +154,7 @@ final class Application {
         FirebaseDatabase database = FirebaseDatabase.getInstance();
         FirebaseCredentials firebaseCredentials = fromGoogleCredentials(credentials);
         FirebaseClient firebaseClient = remoteClient(database, firebaseCredentials);
-        return new TidyClient(firebaseClient);
+        return new DeltaWritingClient(new TidyClient(firebaseClient), database);
     }
 
     CommandService commandService() {
@@ -131,7 +169,55 @@ final class Application {
         return blockingQueryBridge;
     }
 
+    AdaptiveQueryBridge adaptiveQueryBridge() {
+        return adaptiveQueryBridge;
+    }
+
     FirebaseSubscriptionBridge subscriptionBridge() {
         return subscriptionBridge;
     }
+
+    StateRouter stateRouter() {
+        return stateRouter;
+    }
+
+    EventRouter eventRouter() {
+        return eventRouter;
+    }
+
+    /**
+     * Obtains the router which serves the subscriptions to the given topic.
+     *
+     * @return the router or {@code Optional.empty()} if the topic is served by
+     *         the subscription bridge
+     */
+    Optional<SubscriptionRouter> routerFor(Topic topic) {
+        if (StateRouter.accepts(topic)) {
+            return Optional.of(stateRouter);
+        }
+        if (EventRouter.accepts(topic)) {
+            return Optional.of(eventRouter);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Obtains the router which has created the given subscription.
+     *
+     * @return the router or {@code Optional.empty()} if the subscription has been created by
+     *         the subscription bridge
+     */
+    Optional<SubscriptionRouter> routerOf(Subscription subscription) {
+        return Stream.of(stateRouter, eventRouter)
+                     .filter(router -> router.routes(subscription))
+                     .findFirst();
+    }
+
+    DeltaWritingClient deltaWritingClient() {
+        return deltaWritingClient;
+    }
+
+    EventNodeCompactor eventNodeCompactor() {
+        return eventNodeCompactor;
+    }
 }
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.spine.logging.Logging;
+import io.spine.web.firebase.FirebaseClient;
+import io.spine.web.firebase.NodePath;
+import io.spine.web.firebase.NodeValue;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.spine.web.test.given.JsonValues.asObject;
+import static io.spine.web.test.given.JsonValues.toFirebaseValue;
+
+/**
+ * A {@link FirebaseClient} which writes only the changed fields of the updated node children.
+ *
+ * <p>The subscription bridge rewrites the whole entity state each time an entity changes, even
+ * if a single field is affected. This client remembers the last value written to each child of
+ * a node. When the child is updated again, only the fields which differ from the previous value
+ * are written as a multi-path update. The items of repeated fields are compared by index. The
+ * fields and items which are no longer present are removed.
+ * If nothing has changed, no write is performed at all.
+ *
+ * <p>In order for the partial updates to be possible, the children are stored as JSON objects
+ * rather than JSON strings. The readers still obtain the whole child value, as Firebase merges
+ * the partial updates into the stored value.
+ *
+ * <p>If some of the children cannot be stored as JSON objects, e.g. if they contain keys which
+ * are not allowed by Firebase, the whole value is written by the delegate as-is.
+ *
+ * <p>The children are written to the database directly, bypassing the delegate. The written nodes
+ * are reported to the {@link TidyClient} delegate, so that they are deleted on shutdown.
+ * If a write fails, the written values of the affected children are forgotten, so that the next
+ * update of each of them is written as a whole.
+ *
+ * <p>The updates of the nodes registered for {@linkplain #conflate(NodePath, Duration)
+ * conflation} are rate-limited by an {@link UpdateConflator}.
+ */
+final class DeltaWritingClient implements FirebaseClient, Logging {
+
+    private static final String PATH_SEPARATOR = "/";
+    private static final String FORBIDDEN_KEY_CHARS = ".$#[]/";
+
+    private final TidyClient delegate;
+    private final FirebaseDatabase database;
+    private final Map<String, JsonObject> writtenChildren = new HashMap<>();
+    private final UpdateConflator conflator = new UpdateConflator(this::writeChanges);
+
+    DeltaWritingClient(TidyClient delegate, FirebaseDatabase database) {
+        this.delegate = checkNotNull(delegate);
+        this.database = checkNotNull(database);
+    }
+
+    /**
+     * Limits the updates of each child of the given node to at most one per the given interval.
+     *
+     * @see UpdateConflator
+     */
+    void conflate(NodePath node, Duration interval) {
+        conflator.register(node, interval);
+    }
+
+    @Override
+    public Optional<NodeValue> fetchNode(NodePath nodePath) {
+        return delegate.fetchNode(nodePath);
+    }
+
+    @Override
+    public void subscribeTo(NodePath nodePath, ChildEventListener listener) {
+        delegate.subscribeTo(nodePath, listener);
+    }
+
+    @Override
+    public void create(NodePath nodePath, NodeValue value) {
+        forgetChildren(nodePath);
+        delegate.create(nodePath, value);
+    }
+
+    @Override
+    public void update(NodePath nodePath, NodeValue value) {
+        Optional<Map<String, JsonElement>> children = structuredChildren(value.underlyingJson());
+        if (children.isPresent()) {
+            updateChildren(nodePath, children.get());
+        } else {
+            forgetChildren(nodePath);
+            delegate.update(nodePath, value);
+        }
+    }
+
+    @Override
+    public void delete(NodePath nodePath) {
+        forget(nodePath);
+        delegate.delete(nodePath);
+    }
+
+    /**
+     * Updates the given children of the node.
+     *
+     * <p>The keys of the children must be allowed by Firebase. The children which are JSON objects
+     * with the keys allowed by Firebase are updated field by field. Any other children are written
+     * as JSON strings. A {@code null} child is removed from the node.
+     */
+    void updateChildren(NodePath nodePath, Map<String, JsonElement> children) {
+        for (String key : children.keySet()) {
+            checkArgument(isValidKey(key), "The child key `%s` is not allowed by Firebase.", key);
+        }
+        if (!conflator.offer(nodePath, children)) {
+            writeChanges(nodePath, children);
+        }
+    }
+
+    /**
+     * Writes the given children to a new node at once and waits until the write completes.
+     *
+     * <p>Unlike {@link #updateChildren}, the written values are not remembered, as the node is not
+     * going to be updated. The children which are not JSON objects with the keys allowed by
+     * Firebase are written as JSON strings.
+     */
+    void createChildren(NodePath nodePath, Map<String, JsonElement> children) {
+        Map<String, @Nullable Object> values = new HashMap<>();
+        for (Map.Entry<String, JsonElement> child : children.entrySet()) {
+            JsonElement value = child.getValue();
+            Object stored = value.isJsonObject() && hasValidKeys(value)
+                            ? toFirebaseValue(value)
+                            : value.toString();
+            values.put(child.getKey(), stored);
+        }
+        delegate.track(nodePath);
+        try {
+            database.getReference(nodePath.getValue())
+                    .setValueAsync(values)
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized void writeChanges(NodePath nodePath, Map<String, JsonElement> children) {
+        String node = nodePath.getValue();
+        Map<String, @Nullable Object> changes = new HashMap<>();
+        for (Map.Entry<String, JsonElement> child : children.entrySet()) {
+            String key = child.getKey();
+            String childPath = node + PATH_SEPARATOR + key;
+            JsonElement value = child.getValue();
+            if (value.isJsonNull()) {
+                writtenChildren.remove(childPath);
+                changes.put(key, null);
+            } else if (!value.isJsonObject() || !hasValidKeys(value)) {
+                writtenChildren.remove(childPath);
+                changes.put(key, value.toString());
+            } else {
+                JsonObject current = value.getAsJsonObject();
+                JsonObject previous = writtenChildren.put(childPath, current);
+                if (previous == null) {
+                    changes.put(key, toFirebaseValue(current));
+                } else {
+                    collectChanges(key, previous, current, changes);
+                }
+            }
+        }
+        if (!changes.isEmpty()) {
+            delegate.track(nodePath);
+            ApiFuture<Void> write = database.getReference(node)
+                                            .updateChildrenAsync(changes);
+            forgetOnFailure(write, nodePath, children.keySet());
+        }
+    }
+
+    /**
+     * Removes the children with the given keys from the node.
+     */
+    synchronized void removeChildren(NodePath nodePath, Collection<String> keys) {
+        String node = nodePath.getValue();
+        Map<String, @Nullable Object> removal = new HashMap<>();
+        for (String key : keys) {
+            writtenChildren.remove(node + PATH_SEPARATOR + key);
+            removal.put(key, null);
+        }
+        if (!removal.isEmpty()) {
+            ApiFuture<Void> write = database.getReference(node)
+                                            .updateChildrenAsync(removal);
+            forgetOnFailure(write, nodePath, keys);
+        }
+    }
+
+    /**
+     * Logs the failure of the given write and forgets the written values of the given children.
+     */
+    private void forgetOnFailure(ApiFuture<Void> write,
+                                 NodePath nodePath,
+                                 Collection<String> keys) {
+        ApiFutures.addCallback(write, new ApiFutureCallback<Void>() {
+            @Override
+            public void onFailure(Throwable t) {
+                forgetChildren(nodePath, keys);
+                _warn().withCause(t)
+                       .log("Unable to update the children of the node `%s`.",
+                            nodePath.getValue());
+            }
+
+            @Override
+            public void onSuccess(Void result) {
+                // Nothing to do.
+            }
+        }, directExecutor());
+    }
+
+    private synchronized void forgetChildren(NodePath nodePath, Collection<String> keys) {
+        String node = nodePath.getValue();
+        for (String key : keys) {
+            writtenChildren.remove(node + PATH_SEPARATOR + key);
+        }
+    }
+
+    private void forget(NodePath nodePath) {
+        conflator.forget(nodePath);
+        forgetChildren(nodePath);
+    }
+
+    private synchronized void forgetChildren(NodePath nodePath) {
+        String prefix = nodePath.getValue() + PATH_SEPARATOR;
+        writtenChildren.keySet()
+                       .removeIf(path -> path.startsWith(prefix));
+    }
+
+    /**
+     * Collects the paths of the values which differ between the given JSON elements.
+     *
+     * <p>Nested objects are compared field by field. Arrays are compared item by item, since
+     * Firebase stores them as children keyed by the item index. Any other changed values are
+     * written as a whole. The removed fields and items are mapped to {@code null}.
+     */
+    @VisibleForTesting
+    static void collectChanges(String path,
+                               JsonElement previous,
+                               JsonElement current,
+                               Map<String, @Nullable Object> changes) {
+        if (previous.isJsonObject() && current.isJsonObject()) {
+            collectFieldChanges(path, previous.getAsJsonObject(), current.getAsJsonObject(),
+                                changes);
+        } else if (previous.isJsonArray() && current.isJsonArray()) {
+            collectItemChanges(path, previous.getAsJsonArray(), current.getAsJsonArray(),
+                               changes);
+        } else if (!current.equals(previous)) {
+            changes.put(path, toFirebaseValue(current));
+        }
+    }
+
+    private static void collectFieldChanges(String path,
+                                            JsonObject previous,
+                                            JsonObject current,
+                                            Map<String, @Nullable Object> changes) {
+        for (Map.Entry<String, JsonElement> field : current.entrySet()) {
+            String fieldPath = path + PATH_SEPARATOR + field.getKey();
+            JsonElement oldValue = previous.get(field.getKey());
+            if (oldValue == null) {
+                changes.put(fieldPath, toFirebaseValue(field.getValue()));
+            } else {
+                collectChanges(fieldPath, oldValue, field.getValue(), changes);
+            }
+        }
+        for (Map.Entry<String, JsonElement> field : previous.entrySet()) {
+            if (!current.has(field.getKey())) {
+                changes.put(path + PATH_SEPARATOR + field.getKey(), null);
+            }
+        }
+    }
+
+    private static void collectItemChanges(String path,
+                                           JsonArray previous,
+                                           JsonArray current,
+                                           Map<String, @Nullable Object> changes) {
+        for (int i = 0; i < current.size(); i++) {
+            String itemPath = path + PATH_SEPARATOR + i;
+            if (i < previous.size()) {
+                collectChanges(itemPath, previous.get(i), current.get(i), changes);
+            } else {
+                changes.put(itemPath, toFirebaseValue(current.get(i)));
+            }
+        }
+        for (int i = current.size(); i < previous.size(); i++) {
+            changes.put(path + PATH_SEPARATOR + i, null);
+        }
+    }
+
+    /**
+     * Parses the children of the node value into JSON objects.
+     *
+     * <p>The children are expected to be either JSON objects serialized into strings or
+     * {@code null}s.
+     *
+     * @return the parsed children or {@code Optional.empty()} if any of the children cannot be
+     *         stored as a JSON object
+     */
+    private static Optional<Map<String, JsonElement>> structuredChildren(JsonObject value) {
+        Map<String, JsonElement> children = new HashMap<>();
+        for (Map.Entry<String, JsonElement> child : value.entrySet()) {
+            JsonElement childValue = child.getValue();
+            if (childValue.isJsonNull()) {
+                children.put(child.getKey(), childValue);
+                continue;
+            }
+            Optional<JsonObject> parsed = asObject(childValue);
+            if (!parsed.isPresent() || !hasValidKeys(parsed.get())) {
+                return Optional.empty();
+            }
+            children.put(child.getKey(), parsed.get());
+        }
+        return Optional.of(children);
+    }
+
+    private static boolean hasValidKeys(JsonElement element) {
+        if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> field : element.getAsJsonObject().entrySet()) {
+                if (!isValidKey(field.getKey()) || !hasValidKeys(field.getValue())) {
+                    return false;
+                }
+            }
+        } else if (element.isJsonArray()) {
+            for (JsonElement item : element.getAsJsonArray()) {
+                if (!hasValidKeys(item)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isValidKey(String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (char c : key.toCharArray()) {
+            if (FORBIDDEN_KEY_CHARS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.util.Timestamps;
+import io.spine.logging.Logging;
+import io.spine.web.firebase.NodePath;
+import io.spine.web.firebase.NodeValue;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.web.test.given.JsonValues.asObject;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Periodically removes the old events from the event subscription nodes.
+ *
+ * <p>Event subscription nodes receive a child per matching event and, if left alone, grow for as
+ * long as the subscription lives. Each node registered with a {@link Retention} is checked once
+ * in a {@linkplain #PERIOD period}, and the events which exceed the retained count or age are
+ * removed, at most {@value #BATCH_SIZE} per write.
+ *
+ * <p>Only the events which are already stored in the node are considered. The children which
+ * are not events are never removed. Once the node is deleted, e.g. when the subscription is
+ * cancelled, it is no longer checked.
+ */
+final class EventNodeCompactor implements Logging {
+
+    private static final Duration PERIOD = Duration.ofSeconds(30);
+    private static final int BATCH_SIZE = 100;
+
+    private final DeltaWritingClient client;
+    private final Map<NodePath, Retention> retentions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("event-node-compactor")
+                                      .setDaemon(true)
+                                      .build()
+    );
+
+    private EventNodeCompactor(DeltaWritingClient client) {
+        this.client = checkNotNull(client);
+    }
+
+    /**
+     * Creates a new compactor and schedules the periodic compaction.
+     *
+     * @param client
+     *         the client to read and trim the nodes with
+     */
+    static EventNodeCompactor start(DeltaWritingClient client) {
+        EventNodeCompactor compactor = new EventNodeCompactor(client);
+        long period = PERIOD.toMillis();
+        compactor.executor.scheduleWithFixedDelay(compactor::compactAll, period, period,
+                                                  MILLISECONDS);
+        return compactor;
+    }
+
+    /**
+     * Starts trimming the given node according to the given retention.
+     */
+    void register(NodePath node, Retention retention) {
+        checkNotNull(node);
+        checkNotNull(retention);
+        retentions.put(node, retention);
+    }
+
+    private void compactAll() {
+        for (Map.Entry<NodePath, Retention> entry : retentions.entrySet()) {
+            try {
+                compact(entry.getKey(), entry.getValue());
+            } catch (RuntimeException e) {
+                _warn().withCause(e)
+                       .log("Unable to compact the node `%s`.", entry.getKey().getValue());
+            }
+        }
+    }
+
+    private void compact(NodePath node, Retention retention) {
+        Optional<NodeValue> value = client.fetchNode(node);
+        if (!value.isPresent()) {
+            retentions.remove(node);
+            return;
+        }
+        List<StoredEvent> events = storedEvents(value.get());
+        List<String> expired = expired(events, retention);
+        for (List<String> batch : Iterables.partition(expired, BATCH_SIZE)) {
+            client.removeChildren(node, batch);
+        }
+    }
+
+    /**
+     * Obtains the events stored in the given node, from the oldest to the newest.
+     */
+    private static List<StoredEvent> storedEvents(NodeValue node) {
+        List<StoredEvent> events = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> child : node.underlyingJson().entrySet()) {
+            asObject(child.getValue())
+                    .flatMap(EventNodeCompactor::timestamp)
+                    .ifPresent(when -> events.add(new StoredEvent(child.getKey(), when)));
+        }
+        events.sort(Comparator.comparing(event -> event.when));
+        return events;
+    }
+
+    private static List<String> expired(List<StoredEvent> events, Retention retention) {
+        int excess = retention.maxCount().isPresent()
+                     ? Math.max(0, events.size() - retention.maxCount().getAsInt())
+                     : 0;
+        Optional<Instant> threshold = retention.maxAge()
+                                               .map(age -> Instant.now().minus(age));
+        ImmutableList.Builder<String> result = ImmutableList.builder();
+        for (int i = 0; i < events.size(); i++) {
+            StoredEvent event = events.get(i);
+            boolean tooOld = threshold.isPresent() && event.when.isBefore(threshold.get());
+            if (i < excess || tooOld) {
+                result.add(event.key);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Obtains the time of the event stored as the given JSON.
+     *
+     * @return the event time or {@code Optional.empty()} if the JSON is not an event
+     */
+    private static Optional<Instant> timestamp(JsonObject event) {
+        JsonElement context = event.get("context");
+        if (context == null || !context.isJsonObject()) {
+            return Optional.empty();
+        }
+        JsonElement timestamp = context.getAsJsonObject().get("timestamp");
+        if (timestamp == null || !timestamp.isJsonPrimitive()) {
+            return Optional.empty();
+        }
+        try {
+            Timestamp parsed = Timestamps.parse(timestamp.getAsString());
+            return Optional.of(Instant.ofEpochSecond(parsed.getSeconds(), parsed.getNanos()));
+        } catch (ParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A key of an event stored in a node along with the time of the event.
+     */
+    private static final class StoredEvent {
+
+        private final String key;
+        private final Instant when;
+
+        private StoredEvent(String key, Instant when) {
+            this.key = key;
+            this.when = when;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.collect.ImmutableList;
+import io.spine.base.FieldPath;
+import io.spine.client.CompositeFilter;
+import io.spine.client.Filter;
+import io.spine.client.SubscriptionUpdate;
+import io.spine.client.Target;
+import io.spine.client.TargetFilters;
+import io.spine.client.Topic;
+import io.spine.client.TopicId;
+import io.spine.core.Event;
+import io.spine.core.MessageId;
+import io.spine.core.Origin;
+import io.spine.core.TenantId;
+import io.spine.server.SubscriptionService;
+import io.spine.type.TypeUrl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.spine.base.Identifier.newUuid;
+import static io.spine.client.CompositeFilter.CompositeOperator.ALL;
+import static io.spine.client.Filter.Operator.EQUAL;
+import static io.spine.protobuf.AnyPacker.pack;
+import static io.spine.protobuf.AnyPacker.unpack;
+
+/**
+ * Routes events to the client subscriptions which observe the results of a particular message.
+ *
+ * <p>A client which posts a command and observes the events produced by it subscribes to
+ * the events with the {@code context.past_message} equal to the command origin. Such
+ * subscriptions are short-lived and numerous, while each of them waits for the events of
+ * a single command.
+ *
+ * <p>This router indexes the subscriptions by the ID of the origin message. Each event is routed
+ * with a single lookup by the ID of its past message, regardless of the number of pending
+ * subscriptions.
+ *
+ * <p>The events are written to the subscription nodes as children keyed by the event ID.
+ * The subscriptions to the events of other kinds are served by the subscription bridge.
+ *
+ * <p>A client may vanish before its command produces any events. Such subscriptions are cancelled
+ * along with their nodes once they {@linkplain #expireAfter expire}.
+ */
+final class EventRouter extends SubscriptionRouter {
+
+    private static final FieldPath PAST_MESSAGE = FieldPath
+            .newBuilder()
+            .addAllFieldName(ImmutableList.of("context", "past_message"))
+            .build();
+    private static final String ORIGIN_TYPE = TypeUrl.of(Origin.class)
+                                                     .value();
+
+    private final Map<MessageId, Set<Route>> byOrigin = new HashMap<>();
+    private final Map<Route, MessageId> origins = new HashMap<>();
+
+    EventRouter(SubscriptionService subscriptionService, DeltaWritingClient client) {
+        super(subscriptionService, client);
+    }
+
+    /**
+     * Checks if the given topic observes the events produced by a particular message and thus
+     * can be routed.
+     *
+     * <p>Such a topic has the only filter on {@code context.past_message} and no ID filter.
+     */
+    static boolean accepts(Topic topic) {
+        return observedOrigin(topic).isPresent();
+    }
+
+    /**
+     * Creates a topic which observes the events of the given type produced by the given origin.
+     */
+    static Topic observing(String eventType, Origin origin) {
+        Filter filter = Filter
+                .newBuilder()
+                .setFieldPath(PAST_MESSAGE)
+                .setOperator(EQUAL)
+                .setValue(pack(origin))
+                .build();
+        CompositeFilter composite = CompositeFilter
+                .newBuilder()
+                .setOperator(ALL)
+                .addFilter(filter)
+                .build();
+        Target target = Target
+                .newBuilder()
+                .setType(eventType)
+                .setFilters(TargetFilters.newBuilder()
+                                         .addFilter(composite))
+                .build();
+        return Topic
+                .newBuilder()
+                .setId(TopicId.newBuilder()
+                              .setValue(newUuid()))
+                .setTarget(target)
+                .setContext(origin.getActorContext())
+                .build();
+    }
+
+    @Override
+    synchronized void register(Route route) {
+        MessageId origin = observedOrigin(route.topic())
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "The topic does not observe a particular message."));
+        byOrigin.computeIfAbsent(origin, o -> new HashSet<>())
+                .add(route);
+        origins.put(route, origin);
+    }
+
+    @Override
+    synchronized void unregister(Route route) {
+        MessageId origin = origins.remove(route);
+        if (origin == null) {
+            return;
+        }
+        Set<Route> routes = byOrigin.get(origin);
+        routes.remove(route);
+        if (routes.isEmpty()) {
+            byOrigin.remove(origin);
+        }
+    }
+
+    @Override
+    synchronized void route(String type, TenantId tenant, SubscriptionUpdate update) {
+        for (Event event : update.getEventUpdates()
+                                 .getEventList()) {
+            MessageId origin = key(event.getContext()
+                                        .getPastMessage());
+            Set<Route> routes = byOrigin.get(origin);
+            if (routes != null) {
+                String key = childKey(event.getId()
+                                           .toByteString());
+                routes.stream()
+                      .filter(route -> tenant.equals(route.tenant()))
+                      .forEach(route -> route.write(key, event));
+            }
+        }
+    }
+
+    /**
+     * Obtains the ID of the message whose events are observed by the given topic.
+     */
+    private static Optional<MessageId> observedOrigin(Topic topic) {
+        TargetFilters filters = topic.getTarget()
+                                     .getFilters();
+        if (filters.getIdFilter()
+                   .getIdCount() > 0 || filters.getFilterCount() != 1) {
+            return Optional.empty();
+        }
+        CompositeFilter composite = filters.getFilter(0);
+        if (composite.getFilterCount() != 1) {
+            return Optional.empty();
+        }
+        Filter filter = composite.getFilter(0);
+        boolean observesOrigin = filter.getOperator() == EQUAL
+                && PAST_MESSAGE.equals(filter.getFieldPath())
+                && ORIGIN_TYPE.equals(filter.getValue()
+                                            .getTypeUrl());
+        if (!observesOrigin) {
+            return Optional.empty();
+        }
+        Origin origin = unpack(filter.getValue(), Origin.class);
+        return Optional.of(key(origin));
+    }
+
+    /**
+     * Obtains the index key of the given origin.
+     *
+     * <p>Only the ID and the type of the origin message are taken into account.
+     */
+    private static MessageId key(Origin origin) {
+        MessageId message = origin.getMessage();
+        return MessageId
+                .newBuilder()
+                .setId(message.getId())
+                .setTypeUrl(message.getTypeUrl())
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.io.CharStreams;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.json.Json.toCompactJson;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * A servlet which handles a Protobuf message along with the parameters of the HTTP request.
+ *
+ * <p>The request body is expected to be a Base64-encoded Protobuf message, as sent by
+ * the Dart client. The response is written as JSON.
+ *
+ * <p>Unlike the servlets provided by the Spine Web API, this servlet allows the endpoints to
+ * accept additional options as the query parameters while keeping the request message intact.
+ *
+ * @param <I>
+ *         the type of the request message
+ * @param <O>
+ *         the type of the response message
+ */
+@SuppressWarnings("serial")
+abstract class ParameterizedServlet<I extends Message, O extends Message> extends HttpServlet {
+
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private final Parser<I> requestParser;
+
+    ParameterizedServlet(Parser<I> requestParser) {
+        super();
+        this.requestParser = checkNotNull(requestParser);
+    }
+
+    /**
+     * Handles the given request message.
+     *
+     * @param request
+     *         the parsed request message
+     * @param httpRequest
+     *         the HTTP request to obtain the parameters from
+     * @return the response message
+     * @throws IllegalArgumentException
+     *         if the request parameters are invalid
+     */
+    abstract O handle(I request, HttpServletRequest httpRequest);
+
+    @Override
+    protected final void doPost(HttpServletRequest req, HttpServletResponse resp)
+            throws IOException {
+        Optional<I> request = parse(req);
+        if (!request.isPresent()) {
+            resp.sendError(SC_BAD_REQUEST);
+            return;
+        }
+        O response;
+        try {
+            response = handle(request.get(), req);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        resp.setContentType(JSON_CONTENT_TYPE);
+        resp.getWriter()
+            .append(toCompactJson(response));
+    }
+
+    private Optional<I> parse(HttpServletRequest req) throws IOException {
+        String body = CharStreams.toString(req.getReader());
+        try {
+            byte[] bytes = Base64.getDecoder()
+                                 .decode(body.trim());
+            return Optional.of(requestParser.parseFrom(bytes));
+        } catch (IllegalArgumentException | InvalidProtocolBufferException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.OptionalInt;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Utilities for reading the parameters of HTTP requests.
+ */
+final class RequestParameters {
+
+    /**
+     * Prevents the utility class instantiation.
+     */
+    private RequestParameters() {
+    }
+
+    /**
+     * Obtains the value of the given request parameter as a positive integer.
+     *
+     * @return the parameter value or {@code OptionalInt.empty()} if the parameter is not set
+     * @throws IllegalArgumentException
+     *         if the parameter value is not a positive integer
+     */
+    static OptionalInt positiveInt(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        if (isNullOrEmpty(value)) {
+            return OptionalInt.empty();
+        }
+        int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("Parameter `%s` must be an integer, got `%s`.", name, value), e
+            );
+        }
+        checkArgument(result > 0, "Parameter `%s` must be positive, got `%s`.", name, result);
+        return OptionalInt.of(result);
+    }
+
+    /**
+     * Obtains the value of the given required request parameter as a long integer.
+     *
+     * @throws IllegalArgumentException
+     *         if the parameter is not set or its value is not an integer
+     */
+    static long requiredLong(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        checkArgument(!isNullOrEmpty(value), "Parameter `%s` must be set.", name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    String.format("Parameter `%s` must be an integer, got `%s`.", name, value), e
+            );
+        }
+    }
+}
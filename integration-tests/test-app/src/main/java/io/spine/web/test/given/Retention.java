@@ -0,0 +1,97 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.base.MoreObjects;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static io.spine.web.test.given.RequestParameters.positiveInt;
+
+/**
+ * Limits of how many events are kept in an event subscription node.
+ *
+ * <p>The retention is requested by the client via the {@code retention-count} and
+ * {@code retention-age} parameters of the subscription request. The age is specified in seconds.
+ */
+final class Retention {
+
+    static final String COUNT_PARAMETER = "retention-count";
+    static final String AGE_PARAMETER = "retention-age";
+
+    private final OptionalInt maxCount;
+    private final Optional<Duration> maxAge;
+
+    private Retention(OptionalInt maxCount, Optional<Duration> maxAge) {
+        this.maxCount = maxCount;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Obtains the retention requested in the parameters of the given HTTP request.
+     *
+     * @return the requested retention or {@code Optional.empty()} if none is requested
+     * @throws IllegalArgumentException
+     *         if the retention parameters are not positive integers
+     */
+    static Optional<Retention> from(HttpServletRequest request) {
+        OptionalInt count = positiveInt(request, COUNT_PARAMETER);
+        OptionalInt ageSeconds = positiveInt(request, AGE_PARAMETER);
+        if (!count.isPresent() && !ageSeconds.isPresent()) {
+            return Optional.empty();
+        }
+        Optional<Duration> age = ageSeconds.isPresent()
+                                 ? Optional.of(Duration.ofSeconds(ageSeconds.getAsInt()))
+                                 : Optional.empty();
+        return Optional.of(new Retention(count, age));
+    }
+
+    /**
+     * Obtains the maximum number of events to keep.
+     */
+    OptionalInt maxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Obtains the maximum age of the events to keep.
+     */
+    Optional<Duration> maxAge() {
+        return maxAge;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("maxCount", maxCount)
+                          .add("maxAge", maxAge)
+                          .toString();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.BytesValue;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.DoubleValue;
+import com.google.protobuf.EnumValue;
+import com.google.protobuf.FloatValue;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Int64Value;
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.UInt32Value;
+import com.google.protobuf.UInt64Value;
+import com.google.protobuf.util.Timestamps;
+import io.spine.base.FieldPath;
+import io.spine.client.CompositeFilter;
+import io.spine.client.Filter;
+import io.spine.client.TargetFilters;
+
+import java.util.Optional;
+
+import static io.spine.client.CompositeFilter.CompositeOperator.EITHER;
+import static io.spine.protobuf.AnyPacker.unpack;
+
+/**
+ * Evaluates the {@linkplain TargetFilters target filters} of a topic against entity states.
+ *
+ * <p>The values are compared in a {@linkplain #normalize(Object) normalized} form, so that
+ * the filter values packed by the clients match the entity fields regardless of the exact
+ * wrapper type, e.g. an {@code int32} filter value matches an {@code int64} field.
+ */
+final class StateFilters {
+
+    /**
+     * Prevents the utility class instantiation.
+     */
+    private StateFilters() {
+    }
+
+    /**
+     * Checks if the entity with the given ID and state passes the filters.
+     *
+     * <p>The ID filter, if set, must contain the entity ID. Each of the composite filters must
+     * pass. The empty filters match any entity.
+     */
+    static boolean matches(TargetFilters filters, Any id, Message state) {
+        if (filters.getIdFilter()
+                   .getIdCount() > 0) {
+            Object entityId = normalize(id);
+            boolean idMatches = filters.getIdFilter()
+                                       .getIdList()
+                                       .stream()
+                                       .anyMatch(filterId -> normalize(filterId).equals(entityId));
+            if (!idMatches) {
+                return false;
+            }
+        }
+        for (CompositeFilter composite : filters.getFilterList()) {
+            if (!matches(composite, state)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(CompositeFilter composite, Message state) {
+        if (composite.getOperator() == EITHER) {
+            return composite.getFilterList()
+                            .stream()
+                            .anyMatch(filter -> matches(filter, state));
+        }
+        return composite.getFilterList()
+                        .stream()
+                        .allMatch(filter -> matches(filter, state));
+    }
+
+    private static boolean matches(Filter filter, Message state) {
+        Optional<Object> actual = fieldValue(state, filter.getFieldPath());
+        if (!actual.isPresent()) {
+            return false;
+        }
+        Object expected = normalize(filter.getValue());
+        switch (filter.getOperator()) {
+            case EQUAL:
+                return actual.get().equals(expected);
+            case GREATER_THAN:
+                return compare(actual.get(), expected).map(c -> c > 0).orElse(false);
+            case LESS_THAN:
+                return compare(actual.get(), expected).map(c -> c < 0).orElse(false);
+            case GREATER_OR_EQUAL:
+                return compare(actual.get(), expected).map(c -> c >= 0).orElse(false);
+            case LESS_OR_EQUAL:
+                return compare(actual.get(), expected).map(c -> c <= 0).orElse(false);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Obtains the normalized value of the field at the given path.
+     *
+     * @return the field value or {@code Optional.empty()} if there is no such field
+     */
+    static Optional<Object> fieldValue(Message state, FieldPath path) {
+        Object value = state;
+        for (String name : path.getFieldNameList()) {
+            if (!(value instanceof Message)) {
+                return Optional.empty();
+            }
+            Message message = (Message) value;
+            Descriptor type = message.getDescriptorForType();
+            FieldDescriptor field = type.findFieldByName(name);
+            if (field == null || field.isRepeated()) {
+                return Optional.empty();
+            }
+            value = message.getField(field);
+        }
+        return Optional.of(normalize(value));
+    }
+
+    /**
+     * Converts the given value into the form in which the values are compared.
+     *
+     * <p>The {@code Any}s are unpacked. The wrapper types are unwrapped. The integer numbers
+     * become {@code Long}s, the floating point numbers become {@code Double}s, and the enum
+     * values become their names. Other values are returned as-is.
+     */
+    static Object normalize(Object value) {
+        Object result = value instanceof Any
+                        ? unpack((Any) value)
+                        : value;
+        if (result instanceof StringValue) {
+            return ((StringValue) result).getValue();
+        }
+        if (result instanceof Int32Value) {
+            return (long) ((Int32Value) result).getValue();
+        }
+        if (result instanceof Int64Value) {
+            return ((Int64Value) result).getValue();
+        }
+        if (result instanceof UInt32Value) {
+            return (long) ((UInt32Value) result).getValue();
+        }
+        if (result instanceof UInt64Value) {
+            return ((UInt64Value) result).getValue();
+        }
+        if (result instanceof FloatValue) {
+            return (double) ((FloatValue) result).getValue();
+        }
+        if (result instanceof DoubleValue) {
+            return ((DoubleValue) result).getValue();
+        }
+        if (result instanceof BoolValue) {
+            return ((BoolValue) result).getValue();
+        }
+        if (result instanceof BytesValue) {
+            return ((BytesValue) result).getValue();
+        }
+        if (result instanceof EnumValue) {
+            return ((EnumValue) result).getName();
+        }
+        if (result instanceof EnumValueDescriptor) {
+            return ((EnumValueDescriptor) result).getName();
+        }
+        if (result instanceof Integer) {
+            return ((Integer) result).longValue();
+        }
+        if (result instanceof Float) {
+            return ((Float) result).doubleValue();
+        }
+        return result;
+    }
+
+    private static Optional<Integer> compare(Object actual, Object expected) {
+        if (actual instanceof Long && expected instanceof Long) {
+            return Optional.of(Long.compare((Long) actual, (Long) expected));
+        }
+        if (actual instanceof Number && expected instanceof Number) {
+            return Optional.of(Double.compare(((Number) actual).doubleValue(),
+                                              ((Number) expected).doubleValue()));
+        }
+        if (actual instanceof String && expected instanceof String) {
+            return Optional.of(((String) actual).compareTo((String) expected));
+        }
+        if (actual instanceof Timestamp && expected instanceof Timestamp) {
+            return Optional.of(Timestamps.compare((Timestamp) actual, (Timestamp) expected));
+        }
+        return Optional.empty();
+    }
+}
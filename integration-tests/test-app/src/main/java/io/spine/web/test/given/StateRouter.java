@@ -0,0 +1,452 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.FieldMaskUtil;
+import io.spine.base.EntityState;
+import io.spine.base.Identifier;
+import io.spine.client.EntityStateUpdate;
+import io.spine.client.EntityStateWithVersion;
+import io.spine.client.IdFilter;
+import io.spine.client.Query;
+import io.spine.client.QueryId;
+import io.spine.client.QueryResponse;
+import io.spine.client.Subscription;
+import io.spine.client.SubscriptionUpdate;
+import io.spine.client.Target;
+import io.spine.client.TargetFilters;
+import io.spine.client.Topic;
+import io.spine.client.TopicId;
+import io.spine.core.ActorContext;
+import io.spine.core.TenantId;
+import io.spine.grpc.MemoizingObserver;
+import io.spine.server.QueryService;
+import io.spine.server.SubscriptionService;
+import io.spine.type.TypeUrl;
+import io.spine.type.UnknownTypeException;
+import io.spine.web.firebase.subscription.FirebaseSubscription;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.base.Identifier.newUuid;
+import static io.spine.grpc.StreamObservers.memoizingObserver;
+import static io.spine.protobuf.AnyPacker.unpack;
+import static io.spine.protobuf.Messages.defaultInstance;
+import static java.lang.System.currentTimeMillis;
+import static java.util.Collections.emptySet;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Routes entity state updates to the client subscriptions through a {@link TopicIndex}.
+ *
+ * <p>Each change of an entity is checked only against the client subscriptions which the index
+ * finds as candidates, and against the subscriptions which have previously received the same
+ * entity. The latter ones get the entity removed when it no longer matches.
+ *
+ * <p>The matching entity states are written to the subscription nodes as children keyed by
+ * the entity ID. The field mask of the topic, if any, is applied before writing.
+ *
+ * <p>Each written state is stamped with a version, which grows with each write. The clients use
+ * the versions to drop the states which arrive late or twice.
+ *
+ * <p>A subscription may be {@linkplain #subscribeWithSnapshot created with a snapshot}, in which
+ * case the node also receives the states of the entities which match the topic at the moment
+ * of subscribing.
+ *
+ * <p>A subscription may be {@linkplain #resume resumed} by a client which has reconnected. Only
+ * the entities which have changed after the last version seen by the client are written again.
+ */
+final class StateRouter extends SubscriptionRouter {
+
+    private final QueryService queryService;
+    private final TopicIndex<Route> index = new TopicIndex<>();
+    private final Map<Any, Set<Route>> holders = new HashMap<>();
+
+    /**
+     * The IDs of the entities routed to the subscriptions which await their initial snapshot.
+     */
+    private final Map<TopicId, Set<Any>> awaitingSnapshot = new HashMap<>();
+    private final Map<Route, Deliveries> deliveries = new ConcurrentHashMap<>();
+    private long lastVersion;
+
+    StateRouter(SubscriptionService subscriptionService,
+                QueryService queryService,
+                DeltaWritingClient client) {
+        super(subscriptionService, client);
+        this.queryService = checkNotNull(queryService);
+    }
+
+    /**
+     * Checks if the given topic targets entity states and thus can be routed.
+     */
+    static boolean accepts(Topic topic) {
+        try {
+            Class<?> type = TypeUrl.parse(topic.getTarget()
+                                               .getType())
+                                   .toJavaClass();
+            return EntityState.class.isAssignableFrom(type);
+        } catch (UnknownTypeException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new client subscription to the given topic and writes the current states of
+     * the matching entities to the subscription node.
+     *
+     * <p>The subscription is registered before the current states are read. The entities which
+     * change in between are delivered by the subscription, and their states read by the query
+     * are skipped as they may be outdated. Thus, each entity is written either by the snapshot
+     * or by the subscription, and the latest state always wins.
+     */
+    FirebaseSubscription subscribeWithSnapshot(Topic topic) {
+        checkNotNull(topic);
+        synchronized (this) {
+            awaitingSnapshot.put(topic.getId(), new HashSet<>());
+        }
+        try {
+            FirebaseSubscription subscription = subscribe(topic);
+            List<EntityStateWithVersion> snapshot = read(topic);
+            find(subscription.getSubscription())
+                    .ifPresent(route -> writeSnapshot(route, snapshot));
+            return subscription;
+        } finally {
+            synchronized (this) {
+                awaitingSnapshot.remove(topic.getId());
+            }
+        }
+    }
+
+    /**
+     * Resumes the given client subscription after the client has seen the states of
+     * the given version.
+     *
+     * <p>The subscription is {@linkplain #relocate moved} to a new node, so that the client does
+     * not receive the states it already has. The new node receives the current states of
+     * the entities changed after the given version, and the tombstones of the entities which
+     * stopped matching the topic after it.
+     *
+     * <p>If the subscription is unknown, e.g. it has been cancelled, a new subscription is
+     * {@linkplain #subscribeWithSnapshot created with a snapshot}.
+     *
+     * @param subscription
+     *         the subscription to resume
+     * @param seenVersion
+     *         the latest version of the entity states seen by the client
+     */
+    FirebaseSubscription resume(Subscription subscription, long seenVersion) {
+        checkNotNull(subscription);
+        Optional<Route> found = find(subscription);
+        if (!found.isPresent()) {
+            return subscribeWithSnapshot(subscription.getTopic());
+        }
+        Route route = found.get();
+        synchronized (this) {
+            FirebaseSubscription resumed = relocate(route);
+            Deliveries delivered = deliveries.get(route);
+            if (delivered == null) {
+                return resumed;
+            }
+            delivered.relocated();
+            Topic topic = route.topic();
+            Set<Any> changed = delivered.writtenAfter(seenVersion);
+            if (!changed.isEmpty()) {
+                IdFilter ids = IdFilter
+                        .newBuilder()
+                        .addAllId(changed)
+                        .build();
+                TargetFilters filters = topic.getTarget()
+                                             .getFilters()
+                                             .toBuilder()
+                                             .setIdFilter(ids)
+                                             .build();
+                Target target = topic.getTarget()
+                                     .toBuilder()
+                                     .setFilters(filters)
+                                     .build();
+                for (EntityStateWithVersion entity : read(target, topic.getContext())) {
+                    Message state = unpack(entity.getState());
+                    Any id = idOf(state);
+                    long version = nextVersion();
+                    route.write(childKey(id.getValue()), masked(state, topic), version);
+                    delivered.written(id, version);
+                }
+            }
+            String type = topic.getTarget()
+                               .getType();
+            for (Any id : delivered.removedAfter(seenVersion)) {
+                route.writeTombstone(childKey(id.getValue()), identity(type, id), nextVersion());
+            }
+            delivered.forgetRemovedUntil(seenVersion);
+            return resumed;
+        }
+    }
+
+    private List<EntityStateWithVersion> read(Topic topic) {
+        return read(topic.getTarget(), topic.getContext());
+    }
+
+    private List<EntityStateWithVersion> read(Target target, ActorContext context) {
+        Query query = Query
+                .newBuilder()
+                .setId(QueryId.newBuilder()
+                              .setValue(newUuid()))
+                .setTarget(target)
+                .setContext(context)
+                .build();
+        MemoizingObserver<QueryResponse> observer = memoizingObserver();
+        queryService.read(query, observer);
+        return observer.firstResponse()
+                       .getMessageList();
+    }
+
+    private synchronized void writeSnapshot(Route route, List<EntityStateWithVersion> snapshot) {
+        Set<Any> routed = awaitingSnapshot.get(route.topic()
+                                                    .getId());
+        for (EntityStateWithVersion entity : snapshot) {
+            Message state = unpack(entity.getState());
+            Any id = idOf(state);
+            if (routed == null || !routed.contains(id)) {
+                long version = nextVersion();
+                route.write(childKey(id.getValue()), masked(state, route.topic()), version);
+                delivered(route).ifPresent(delivered -> delivered.written(id, version));
+                holders.computeIfAbsent(id, i -> new HashSet<>())
+                       .add(route);
+            }
+        }
+    }
+
+    /**
+     * Obtains the version for the entity state being written.
+     *
+     * <p>The versions grow with each written state. They are based on the current time in
+     * microseconds, so that the versions written after a restart of the server are still greater
+     * than the ones written before it.
+     */
+    private synchronized long nextVersion() {
+        long now = MICROSECONDS.convert(currentTimeMillis(), MILLISECONDS);
+        lastVersion = Math.max(lastVersion + 1, now);
+        return lastVersion;
+    }
+
+    /**
+     * Obtains the packed ID of the entity with the given state.
+     *
+     * <p>By convention, the ID is the first field of the entity state.
+     */
+    private static Any idOf(Message state) {
+        FieldDescriptor idField = state.getDescriptorForType()
+                                       .getFields()
+                                       .get(0);
+        return Identifier.pack(state.getField(idField));
+    }
+
+    /**
+     * Creates an entity state of the given type which has only the given ID set.
+     */
+    private static Message identity(String type, Any id) {
+        @SuppressWarnings("unchecked") // Ensured by `accepts(Topic)`.
+        Class<? extends Message> stateClass = (Class<? extends Message>) TypeUrl.parse(type)
+                                                                                .toJavaClass();
+        Message.Builder builder = defaultInstance(stateClass).toBuilder();
+        FieldDescriptor idField = builder.getDescriptorForType()
+                                         .getFields()
+                                         .get(0);
+        return builder.setField(idField, Identifier.unpack(id))
+                      .build();
+    }
+
+    private Optional<Deliveries> delivered(Route route) {
+        return Optional.ofNullable(deliveries.get(route));
+    }
+
+    @Override
+    void register(Route route) {
+        deliveries.put(route, new Deliveries());
+        index.add(route, route.topic()
+                              .getTarget());
+    }
+
+    @Override
+    synchronized void unregister(Route route) {
+        index.remove(route);
+        deliveries.remove(route);
+        holders.values()
+               .forEach(routes -> routes.remove(route));
+        holders.values()
+               .removeIf(Set::isEmpty);
+    }
+
+    @Override
+    void route(String type, TenantId tenant, SubscriptionUpdate update) {
+        for (EntityStateUpdate entityUpdate : update.getEntityUpdates()
+                                                    .getUpdateList()) {
+            route(type, tenant, entityUpdate);
+        }
+    }
+
+    private synchronized void route(String type, TenantId tenant, EntityStateUpdate update) {
+        Any id = update.getId();
+        Set<Route> held = holders.getOrDefault(id, emptySet());
+        Set<Route> previous = held.stream()
+                                  .filter(route -> tenant.equals(route.tenant()))
+                                  .collect(toSet());
+        Set<Route> current = new HashSet<>();
+        String key = childKey(id.getValue());
+        long version = nextVersion();
+        if (!update.getNoLongerMatching() && update.hasState()) {
+            Message state = unpack(update.getState());
+            for (Route route : index.candidates(type, id, state)) {
+                if (!tenant.equals(route.tenant())) {
+                    continue;
+                }
+                if (StateFilters.matches(route.topic()
+                                              .getTarget()
+                                              .getFilters(), id, state)) {
+                    current.add(route);
+                    route.write(key, masked(state, route.topic()), version);
+                    delivered(route).ifPresent(delivered -> delivered.written(id, version));
+                }
+            }
+        }
+        for (Route route : previous) {
+            if (!current.contains(route)) {
+                Optional<Deliveries> delivered = delivered(route);
+                boolean inNode = delivered.map(d -> d.inNode(id))
+                                          .orElse(true);
+                if (!inNode) {
+                    route.writeTombstone(key, identity(type, id), version);
+                } else {
+                    route.remove(key);
+                }
+                delivered.ifPresent(d -> d.removed(id, version));
+            }
+        }
+        if (!awaitingSnapshot.isEmpty()) {
+            Stream.concat(previous.stream(), current.stream())
+                  .map(route -> awaitingSnapshot.get(route.topic()
+                                                          .getId()))
+                  .filter(Objects::nonNull)
+                  .forEach(routed -> routed.add(id));
+        }
+        Set<Route> holding = new HashSet<>(current);
+        held.stream()
+            .filter(route -> !tenant.equals(route.tenant()))
+            .forEach(holding::add);
+        if (holding.isEmpty()) {
+            holders.remove(id);
+        } else {
+            holders.put(id, holding);
+        }
+    }
+
+    private static Message masked(Message state, Topic topic) {
+        FieldMask mask = topic.getFieldMask();
+        if (mask.getPathsCount() == 0) {
+            return state;
+        }
+        Message.Builder builder = state.newBuilderForType();
+        FieldMaskUtil.merge(mask, state, builder);
+        return builder.build();
+    }
+
+    /**
+     * The versions of the entity states delivered to a client subscription.
+     *
+     * <p>The removed entities are remembered until the client resumes the subscription after
+     * having seen their removal.
+     */
+    private static final class Deliveries {
+
+        private final Map<Any, Long> written = new HashMap<>();
+        private final Map<Any, Long> removed = new HashMap<>();
+
+        /**
+         * The entities whose states are present in the current node of the subscription.
+         */
+        private final Set<Any> inNode = new HashSet<>();
+
+        private void written(Any id, long version) {
+            written.put(id, version);
+            removed.remove(id);
+            inNode.add(id);
+        }
+
+        private void removed(Any id, long version) {
+            written.remove(id);
+            removed.put(id, version);
+            inNode.remove(id);
+        }
+
+        private boolean inNode(Any id) {
+            return inNode.contains(id);
+        }
+
+        /**
+         * Marks the subscription as moved to a new empty node.
+         */
+        private void relocated() {
+            inNode.clear();
+        }
+
+        private Set<Any> writtenAfter(long version) {
+            return idsAfter(written, version);
+        }
+
+        private Set<Any> removedAfter(long version) {
+            return idsAfter(removed, version);
+        }
+
+        private void forgetRemovedUntil(long version) {
+            removed.values()
+                   .removeIf(removal -> removal <= version);
+        }
+
+        private static Set<Any> idsAfter(Map<Any, Long> versions, long version) {
+            return versions.entrySet()
+                           .stream()
+                           .filter(entry -> entry.getValue() > version)
+                           .map(Map.Entry::getKey)
+                           .collect(toSet());
+        }
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import io.grpc.stub.StreamObserver;
+import io.spine.client.Subscription;
+import io.spine.client.SubscriptionId;
+import io.spine.client.SubscriptionUpdate;
+import io.spine.client.Target;
+import io.spine.client.Topic;
+import io.spine.client.TopicId;
+import io.spine.core.TenantId;
+import io.spine.grpc.MemoizingObserver;
+import io.spine.logging.Logging;
+import io.spine.server.SubscriptionService;
+import io.spine.web.firebase.NodePath;
+import io.spine.web.firebase.subscription.FirebaseSubscription;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.base.Identifier.newUuid;
+import static io.spine.grpc.StreamObservers.memoizingObserver;
+import static io.spine.json.Json.toCompactJson;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Serves the client subscriptions by routing the updates of a shared source subscription.
+ *
+ * <p>The subscription bridge creates a separate subscription in the {@link SubscriptionService}
+ * per client topic, and each update is checked against every one of them. Instead, a router
+ * subscribes to all the updates of a type once per tenant, when the first client of the tenant
+ * subscribes to the type. The concrete routers then find the client subscriptions interested in
+ * each update via an index.
+ *
+ * <p>The updates are written to the client subscription nodes as children.
+ *
+ * <p>If the router {@linkplain #expireAfter expires} the subscriptions, the client subscriptions
+ * which are not kept up for the given time are cancelled, just as the subscriptions of
+ * the bridge.
+ */
+abstract class SubscriptionRouter implements Logging {
+
+    private static final String NODE_PREFIX = "routed-subscriptions/";
+    private static final String KEY_FIELD = "@key";
+    private static final String VERSION_FIELD = "@version";
+    private static final String REMOVED_FIELD = "@removed";
+
+    private final SubscriptionService subscriptionService;
+    private final DeltaWritingClient client;
+    private final Map<SubscriptionId, Route> routes = new ConcurrentHashMap<>();
+    private final Set<Source> sources = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService expiry = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("subscription-router-expiry")
+                                      .setDaemon(true)
+                                      .build()
+    );
+
+    SubscriptionRouter(SubscriptionService subscriptionService, DeltaWritingClient client) {
+        this.subscriptionService = checkNotNull(subscriptionService);
+        this.client = checkNotNull(client);
+    }
+
+    /**
+     * Adds the route to the index of this router.
+     */
+    abstract void register(Route route);
+
+    /**
+     * Removes the route from the index of this router.
+     */
+    abstract void unregister(Route route);
+
+    /**
+     * Routes the update of the given type to the interested client subscriptions of the given
+     * tenant.
+     */
+    abstract void route(String type, TenantId tenant, SubscriptionUpdate update);
+
+    /**
+     * Starts cancelling the client subscriptions which are not kept up for the given time.
+     *
+     * <p>The subscriptions are checked once in a tenth of the timeout.
+     */
+    final void expireAfter(Duration timeout) {
+        checkNotNull(timeout);
+        long period = Math.max(timeout.toMillis() / 10, 1);
+        long timeoutNanos = timeout.toNanos();
+        expiry.scheduleWithFixedDelay(() -> cancelExpired(timeoutNanos), period, period,
+                                      MILLISECONDS);
+    }
+
+    private void cancelExpired(long timeoutNanos) {
+        long now = System.nanoTime();
+        for (Route route : routes.values()) {
+            if (now - route.keptUpAt > timeoutNanos) {
+                try {
+                    cancel(route.subscription);
+                } catch (RuntimeException e) {
+                    _warn().withCause(e)
+                           .log("Unable to cancel the expired subscription `%s`.",
+                                route.subscription.getId()
+                                                  .getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new client subscription to the given topic.
+     */
+    final FirebaseSubscription subscribe(Topic topic) {
+        checkNotNull(topic);
+        listenTo(topic);
+        Subscription subscription = newSubscription(topic);
+        Route route = new Route(subscription, nodeOf(subscription));
+        routes.put(subscription.getId(), route);
+        register(route);
+        return route.firebaseSubscription();
+    }
+
+    /**
+     * Moves the given route to a new client subscription with a new node.
+     *
+     * <p>The node of the previous subscription is deleted. The route stays registered in
+     * the index of this router.
+     */
+    final FirebaseSubscription relocate(Route route) {
+        checkNotNull(route);
+        Subscription previous = route.subscription;
+        NodePath previousNode = route.node;
+        Subscription subscription = newSubscription(route.topic());
+        route.subscription = subscription;
+        route.node = nodeOf(subscription);
+        route.keepUp();
+        routes.remove(previous.getId());
+        routes.put(subscription.getId(), route);
+        client.delete(previousNode);
+        return route.firebaseSubscription();
+    }
+
+    private static Subscription newSubscription(Topic topic) {
+        SubscriptionId id = SubscriptionId
+                .newBuilder()
+                .setValue(newUuid())
+                .build();
+        return Subscription
+                .newBuilder()
+                .setId(id)
+                .setTopic(topic)
+                .build();
+    }
+
+    private static NodePath nodeOf(Subscription subscription) {
+        return NodePath
+                .newBuilder()
+                .setValue(NODE_PREFIX + subscription.getId()
+                                                    .getValue())
+                .build();
+    }
+
+    /**
+     * Checks if the given subscription has been created by this router.
+     */
+    final boolean routes(Subscription subscription) {
+        return routes.containsKey(subscription.getId());
+    }
+
+    /**
+     * Finds the route of the given subscription.
+     *
+     * @return the route or {@code Optional.empty()} if the subscription has not been created by
+     *         this router or has already been cancelled
+     */
+    final Optional<Route> find(Subscription subscription) {
+        return Optional.ofNullable(routes.get(subscription.getId()));
+    }
+
+    /**
+     * Prolongs the lifetime of the given client subscription.
+     *
+     * <p>If the subscription is unknown, does nothing.
+     */
+    final void keepUp(Subscription subscription) {
+        find(subscription).ifPresent(Route::keepUp);
+    }
+
+    /**
+     * Cancels the given client subscription and deletes its node.
+     *
+     * <p>If the subscription is unknown, does nothing.
+     */
+    final void cancel(Subscription subscription) {
+        Route route = routes.remove(subscription.getId());
+        if (route == null) {
+            return;
+        }
+        unregister(route);
+        client.delete(route.node());
+    }
+
+    /**
+     * Obtains the key of a node child from the serialized ID of the message the child holds.
+     *
+     * <p>The key consists only of the characters allowed by Firebase.
+     */
+    static String childKey(ByteString id) {
+        return BaseEncoding.base64Url()
+                           .omitPadding()
+                           .encode(id.toByteArray());
+    }
+
+    /**
+     * Subscribes to all the updates of the topic target type in the topic tenant, unless already
+     * subscribed.
+     *
+     * <p>The source is remembered only once it is activated, so that a failed attempt is repeated
+     * by the next client subscription.
+     */
+    private void listenTo(Topic topic) {
+        String type = topic.getTarget()
+                           .getType();
+        Source source = new Source(type, tenantOf(topic));
+        if (sources.contains(source)) {
+            return;
+        }
+        synchronized (sources) {
+            if (!sources.contains(source)) {
+                activate(source, topic);
+            }
+        }
+    }
+
+    private void activate(Source source, Topic topic) {
+        Target target = Target
+                .newBuilder()
+                .setType(source.type)
+                .setIncludeAll(true)
+                .build();
+        Topic allUpdates = topic
+                .toBuilder()
+                .setId(TopicId.newBuilder()
+                              .setValue(newUuid()))
+                .setTarget(target)
+                .clearFieldMask()
+                .build();
+        MemoizingObserver<Subscription> subscribed = memoizingObserver();
+        subscriptionService.subscribe(allUpdates, subscribed);
+        UpdateObserver observer = new UpdateObserver(source);
+        subscriptionService.activate(subscribed.firstResponse(), observer);
+        if (!observer.terminated) {
+            sources.add(source);
+        }
+    }
+
+    private static TenantId tenantOf(Topic topic) {
+        return topic.getContext()
+                    .getTenantId();
+    }
+
+    /**
+     * A client subscription along with its node.
+     */
+    final class Route {
+
+        private volatile Subscription subscription;
+        private volatile NodePath node;
+        private volatile long keptUpAt = System.nanoTime();
+
+        private Route(Subscription subscription, NodePath node) {
+            this.subscription = subscription;
+            this.node = node;
+        }
+
+        Topic topic() {
+            return subscription.getTopic();
+        }
+
+        TenantId tenant() {
+            return tenantOf(topic());
+        }
+
+        private void keepUp() {
+            keptUpAt = System.nanoTime();
+        }
+
+        NodePath node() {
+            return node;
+        }
+
+        FirebaseSubscription firebaseSubscription() {
+            return FirebaseSubscription
+                    .newBuilder()
+                    .setSubscription(subscription)
+                    .setNodePath(node)
+                    .build();
+        }
+
+        /**
+         * Writes the given message as the child with the given key.
+         */
+        void write(String key, Message message) {
+            JsonElement json = new JsonParser().parse(toCompactJson(message));
+            client.updateChildren(node, ImmutableMap.of(key, json));
+        }
+
+        /**
+         * Writes the given message as the child with the given key along with the version of
+         * the message.
+         *
+         * <p>The child key and the version are written as the {@value #KEY_FIELD} and
+         * {@value #VERSION_FIELD} fields of the child, so that the readers can tell the stale
+         * values apart without parsing the message.
+         */
+        void write(String key, Message message, long version) {
+            client.updateChildren(node, ImmutableMap.of(key, stamped(message, key, version)));
+        }
+
+        /**
+         * Writes a tombstone of the removed message as the child with the given key.
+         *
+         * <p>The tombstone is the given message stamped with the key and the version, and marked
+         * with the {@value #REMOVED_FIELD} field. Unlike {@linkplain #remove removing the child},
+         * the tombstone reaches the readers which have never seen the child in this node.
+         */
+        void writeTombstone(String key, Message message, long version) {
+            JsonObject json = stamped(message, key, version);
+            json.addProperty(REMOVED_FIELD, true);
+            client.updateChildren(node, ImmutableMap.of(key, json));
+        }
+
+        private JsonObject stamped(Message message, String key, long version) {
+            JsonObject json = new JsonParser().parse(toCompactJson(message))
+                                              .getAsJsonObject();
+            json.addProperty(KEY_FIELD, key);
+            json.addProperty(VERSION_FIELD, version);
+            return json;
+        }
+
+        /**
+         * Removes the child with the given key.
+         */
+        void remove(String key) {
+            client.updateChildren(node, ImmutableMap.of(key, JsonNull.INSTANCE));
+        }
+    }
+
+    /**
+     * A type whose updates are routed along with the tenant in which the type is observed.
+     */
+    private static final class Source {
+
+        private final String type;
+        private final TenantId tenant;
+
+        private Source(String type, TenantId tenant) {
+            this.type = type;
+            this.tenant = tenant;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) o;
+            return type.equals(other.type) && tenant.equals(other.tenant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, tenant);
+        }
+    }
+
+    /**
+     * Routes all the updates of a type in a tenant.
+     */
+    private final class UpdateObserver implements StreamObserver<SubscriptionUpdate> {
+
+        private final Source source;
+        private volatile boolean terminated;
+
+        private UpdateObserver(Source source) {
+            this.source = source;
+        }
+
+        @Override
+        public void onNext(SubscriptionUpdate value) {
+            route(source.type, source.tenant, value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            _warn().withCause(t)
+                   .log("Updates of `%s` can no longer be routed.", source.type);
+            terminate();
+        }
+
+        @Override
+        public void onCompleted() {
+            terminate();
+        }
+
+        private void terminate() {
+            terminated = true;
+            sources.remove(source);
+        }
+    }
+}
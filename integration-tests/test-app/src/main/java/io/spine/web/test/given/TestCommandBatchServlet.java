@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import io.spine.core.Ack;
+import io.spine.core.Command;
+import io.spine.grpc.MemoizingObserver;
+import io.spine.server.CommandService;
+import io.spine.web.dart.CommandBatch;
+import io.spine.web.dart.CommandBatchResponse;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import static io.spine.grpc.StreamObservers.memoizingObserver;
+import static io.spine.web.test.given.Server.application;
+
+/**
+ * An endpoint which posts several commands at once.
+ *
+ * <p>The commands are posted one by one in the order of the request, in the same way as by
+ * the {@link TestCommandServlet}. The acknowledgements are returned in the same order.
+ */
+@WebServlet("/command/batch")
+@SuppressWarnings("serial")
+public final class TestCommandBatchServlet
+        extends ParameterizedServlet<CommandBatch, CommandBatchResponse> {
+
+    public TestCommandBatchServlet() {
+        super(CommandBatch.parser());
+    }
+
+    @Override
+    CommandBatchResponse handle(CommandBatch request, HttpServletRequest httpRequest) {
+        CommandService service = application().commandService();
+        CommandBatchResponse.Builder response = CommandBatchResponse.newBuilder();
+        for (Command command : request.getCommandList()) {
+            MemoizingObserver<Ack> observer = memoizingObserver();
+            service.post(command, observer);
+            response.addAck(observer.firstResponse());
+        }
+        return response.build();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import io.spine.client.Topic;
+import io.spine.web.firebase.NodePath;
+import io.spine.web.firebase.subscription.FirebaseSubscription;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.spine.web.test.given.Server.application;
+
+/**
+ * An endpoint creating live queries.
+ *
+ * <p>A live query is a subscription to entity changes whose node initially contains the current
+ * states of the matching entities. Thus, the client obtains both the query result and
+ * the following updates from a single node.
+ *
+ * <p>Live queries are cancelled and kept up in the same way as regular subscriptions. The update
+ * conflation can be requested in the same way as well.
+ */
+@WebServlet("/subscription/live-query")
+@SuppressWarnings("serial")
+public final class TestLiveQueryServlet extends ParameterizedServlet<Topic, FirebaseSubscription> {
+
+    public TestLiveQueryServlet() {
+        super(Topic.parser());
+    }
+
+    @Override
+    FirebaseSubscription handle(Topic topic, HttpServletRequest httpRequest) {
+        checkArgument(StateRouter.accepts(topic),
+                      "Live queries are only supported for entity states, got `%s`.",
+                      topic.getTarget()
+                           .getType());
+        Optional<Duration> conflationInterval = UpdateConflator.requestedInterval(httpRequest);
+        Application app = application();
+        FirebaseSubscription subscription = app.stateRouter()
+                                               .subscribeWithSnapshot(topic);
+        NodePath node = subscription.getNodePath();
+        conflationInterval.ifPresent(interval -> app.deltaWritingClient()
+                                                    .conflate(node, interval));
+        return subscription;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.collect.ImmutableList;
+import io.spine.core.Ack;
+import io.spine.core.Command;
+import io.spine.core.MessageId;
+import io.spine.core.Origin;
+import io.spine.grpc.MemoizingObserver;
+import io.spine.web.dart.PostAndObserveRequest;
+import io.spine.web.dart.PostAndObserveResponse;
+import io.spine.web.firebase.subscription.FirebaseSubscription;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.spine.grpc.StreamObservers.memoizingObserver;
+import static io.spine.protobuf.AnyPacker.pack;
+import static io.spine.web.test.given.Server.application;
+
+/**
+ * An endpoint which posts a command and subscribes to the events produced by it in a single
+ * request.
+ *
+ * <p>The subscriptions are created by the {@link EventRouter} before the command is dispatched,
+ * so that none of the events is missed. If the command is not acknowledged or cannot be posted,
+ * the subscriptions are cancelled right away. Otherwise, they expire unless the client keeps them
+ * up, just as the other routed subscriptions.
+ */
+@WebServlet("/command/observe")
+@SuppressWarnings("serial")
+public final class TestPostAndObserveServlet
+        extends ParameterizedServlet<PostAndObserveRequest, PostAndObserveResponse> {
+
+    public TestPostAndObserveServlet() {
+        super(PostAndObserveRequest.parser());
+    }
+
+    @Override
+    PostAndObserveResponse handle(PostAndObserveRequest request, HttpServletRequest httpRequest) {
+        Application app = application();
+        EventRouter router = app.eventRouter();
+        Command command = request.getCommand();
+        Origin origin = originOf(command);
+        ImmutableList<FirebaseSubscription> subscriptions =
+                request.getEventTypeList()
+                       .stream()
+                       .map(type -> router.subscribe(EventRouter.observing(type, origin)))
+                       .collect(toImmutableList());
+        MemoizingObserver<Ack> observer = memoizingObserver();
+        Ack ack;
+        try {
+            app.commandService()
+               .post(command, observer);
+            ack = observer.firstResponse();
+        } catch (RuntimeException e) {
+            subscriptions.forEach(s -> router.cancel(s.getSubscription()));
+            throw e;
+        }
+        PostAndObserveResponse.Builder response = PostAndObserveResponse
+                .newBuilder()
+                .setAck(ack);
+        if (ack.getStatus()
+               .hasError()) {
+            subscriptions.forEach(s -> router.cancel(s.getSubscription()));
+        } else {
+            response.addAllSubscription(subscriptions);
+        }
+        return response.build();
+    }
+
+    private static Origin originOf(Command command) {
+        MessageId message = MessageId
+                .newBuilder()
+                .setId(pack(command.getId()))
+                .setTypeUrl(command.getMessage()
+                                   .getTypeUrl())
+                .build();
+        return Origin
+                .newBuilder()
+                .setMessage(message)
+                .setActorContext(command.getContext()
+                                        .getActorContext())
+                .build();
+    }
+}
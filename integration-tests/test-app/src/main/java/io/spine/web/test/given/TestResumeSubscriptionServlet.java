@@ -0,0 +1,68 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import io.spine.client.Subscription;
+import io.spine.client.Topic;
+import io.spine.web.firebase.subscription.FirebaseSubscription;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.spine.web.test.given.Server.application;
+
+/**
+ * An endpoint resuming entity state subscriptions after the client reconnects.
+ *
+ * <p>The request body is the subscription to resume. The {@value #SEEN_VERSION} parameter holds
+ * the latest version of the entity states seen by the client. The subscription is moved to a new
+ * node, which receives only the entities changed after that version.
+ */
+@WebServlet("/subscription/resume")
+@SuppressWarnings("serial")
+public final class TestResumeSubscriptionServlet
+        extends ParameterizedServlet<Subscription, FirebaseSubscription> {
+
+    private static final String SEEN_VERSION = "seen-version";
+
+    public TestResumeSubscriptionServlet() {
+        super(Subscription.parser());
+    }
+
+    @Override
+    FirebaseSubscription handle(Subscription subscription, HttpServletRequest httpRequest) {
+        Topic topic = subscription.getTopic();
+        checkArgument(StateRouter.accepts(topic),
+                      "Only entity state subscriptions can be resumed, got `%s`.",
+                      topic.getTarget()
+                           .getType());
+        long seenVersion = RequestParameters.requiredLong(httpRequest, SEEN_VERSION);
+        return application().stateRouter()
+                             .resume(subscription, seenVersion);
+    }
+}
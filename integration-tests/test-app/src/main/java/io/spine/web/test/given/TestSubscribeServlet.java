@@ -26,21 +26,60 @@
 
 package io.spine.web.test.given;
 
+import io.spine.client.Topic;
+import io.spine.web.firebase.NodePath;
 import io.spine.web.firebase.subscription.FirebaseSubscription;
-import io.spine.web.subscription.servlet.SubscribeServlet;
 
 import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Optional;
 
 import static io.spine.web.test.given.Server.application;
 
 /**
  * An endpoint creating new client subscriptions to entity changes.
+ *
+ * <p>The subscriptions are served by the subscription bridge, as in a production server.
+ * The {@link TestRoutedSubscribeServlet} serves some of them by
+ * the {@linkplain SubscriptionRouter routers} instead.
+ *
+ * <p>If the request specifies a {@link Retention}, the events stored in the subscription node
+ * are trimmed accordingly. If the request specifies a conflation interval, the updates of
+ * the subscription node are {@linkplain UpdateConflator conflated}.
  */
 @WebServlet("/subscription/create")
 @SuppressWarnings("serial")
-public class TestSubscribeServlet extends SubscribeServlet<FirebaseSubscription> {
+public class TestSubscribeServlet extends ParameterizedServlet<Topic, FirebaseSubscription> {
 
     public TestSubscribeServlet() {
-        super(application().subscriptionBridge());
+        super(Topic.parser());
+    }
+
+    @Override
+    FirebaseSubscription handle(Topic topic, HttpServletRequest httpRequest) {
+        Optional<Retention> retention = Retention.from(httpRequest);
+        Optional<Duration> conflationInterval = UpdateConflator.requestedInterval(httpRequest);
+        Application app = application();
+        FirebaseSubscription subscription = routerFor(topic)
+                .map(router -> router.subscribe(topic))
+                .orElseGet(() -> app.subscriptionBridge()
+                                    .subscribe(topic));
+        NodePath node = subscription.getNodePath();
+        retention.ifPresent(r -> app.eventNodeCompactor()
+                                    .register(node, r));
+        conflationInterval.ifPresent(interval -> app.deltaWritingClient()
+                                                    .conflate(node, interval));
+        return subscription;
+    }
+
+    /**
+     * Obtains the router which serves the subscriptions to the given topic.
+     *
+     * @return the router or {@code Optional.empty()} if the topic is served by
+     *         the subscription bridge
+     */
+    Optional<SubscriptionRouter> routerFor(Topic topic) {
+        return Optional.empty();
     }
 }
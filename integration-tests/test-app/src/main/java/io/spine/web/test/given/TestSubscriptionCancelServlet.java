@@ -26,21 +26,40 @@
 
 package io.spine.web.test.given;
 
+import io.spine.client.Subscription;
 import io.spine.core.Response;
-import io.spine.web.subscription.servlet.SubscriptionCancelServlet;
 
 import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
 
+import static io.spine.core.Responses.ok;
 import static io.spine.web.test.given.Server.application;
 
 /**
- * An endpoint canceling the client entity change subscriptions.
+ * An endpoint cancelling client subscriptions.
+ *
+ * <p>The subscriptions created by a {@linkplain SubscriptionRouter router} are handled by
+ * the router. Others are handled by the subscription bridge.
  */
 @WebServlet("/subscription/cancel")
 @SuppressWarnings("serial")
-public class TestSubscriptionCancelServlet extends SubscriptionCancelServlet<Response> {
+public class TestSubscriptionCancelServlet extends ParameterizedServlet<Subscription, Response> {
 
     public TestSubscriptionCancelServlet() {
-        super(application().subscriptionBridge());
+        super(Subscription.parser());
+    }
+
+    @Override
+    Response handle(Subscription subscription, HttpServletRequest httpRequest) {
+        Application app = application();
+        Optional<SubscriptionRouter> router = app.routerOf(subscription);
+        if (router.isPresent()) {
+            router.get()
+                  .cancel(subscription);
+            return ok();
+        }
+        return app.subscriptionBridge()
+                  .cancel(subscription);
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import io.spine.client.Subscription;
+import io.spine.core.Response;
+import io.spine.web.dart.KeepUpRequest;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
+
+import static io.spine.core.Responses.ok;
+import static io.spine.core.Status.StatusCase.OK;
+import static io.spine.web.test.given.Server.application;
+
+/**
+ * An endpoint prolonging the lifetime of several client subscriptions at once.
+ *
+ * <p>Each subscription is kept up in the same way as by the {@link TestSubscriptionKeepUpServlet}.
+ * If any of the subscriptions cannot be kept up, the response of the first such subscription is
+ * returned.
+ */
+@WebServlet("/subscription/keep-up-all")
+@SuppressWarnings("serial")
+public final class TestSubscriptionKeepUpAllServlet
+        extends ParameterizedServlet<KeepUpRequest, Response> {
+
+    public TestSubscriptionKeepUpAllServlet() {
+        super(KeepUpRequest.parser());
+    }
+
+    @Override
+    Response handle(KeepUpRequest request, HttpServletRequest httpRequest) {
+        Application app = application();
+        Response result = ok();
+        for (Subscription subscription : request.getSubscriptionList()) {
+            Optional<SubscriptionRouter> router = app.routerOf(subscription);
+            if (router.isPresent()) {
+                router.get()
+                      .keepUp(subscription);
+                continue;
+            }
+            Response response = app.subscriptionBridge()
+                                   .keepUp(subscription);
+            if (isOk(result) && !isOk(response)) {
+                result = response;
+            }
+        }
+        return result;
+    }
+
+    private static boolean isOk(Response response) {
+        return response.getStatus()
+                       .getStatusCase() == OK;
+    }
+}
@@ -26,21 +26,40 @@
 
 package io.spine.web.test.given;
 
+import io.spine.client.Subscription;
 import io.spine.core.Response;
-import io.spine.web.subscription.servlet.SubscriptionKeepUpServlet;
 
 import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
 
+import static io.spine.core.Responses.ok;
 import static io.spine.web.test.given.Server.application;
 
 /**
- * An endpoint for client requests to keep subscription running.
+ * An endpoint prolonging the lifetime of client subscriptions.
+ *
+ * <p>The subscriptions created by a {@linkplain SubscriptionRouter router} are handled by
+ * the router. Others are handled by the subscription bridge.
  */
 @WebServlet("/subscription/keep-up")
 @SuppressWarnings("serial")
-public class TestSubscriptionKeepUpServlet extends SubscriptionKeepUpServlet<Response> {
+public class TestSubscriptionKeepUpServlet extends ParameterizedServlet<Subscription, Response> {
 
     public TestSubscriptionKeepUpServlet() {
-        super(application().subscriptionBridge());
+        super(Subscription.parser());
+    }
+
+    @Override
+    Response handle(Subscription subscription, HttpServletRequest httpRequest) {
+        Application app = application();
+        Optional<SubscriptionRouter> router = app.routerOf(subscription);
+        if (router.isPresent()) {
+            router.get()
+                  .keepUp(subscription);
+            return ok();
+        }
+        return app.subscriptionBridge()
+                  .keepUp(subscription);
     }
 }
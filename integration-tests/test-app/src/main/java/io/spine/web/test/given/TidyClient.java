@@ -71,6 +71,14 @@ public class TidyClient implements FirebaseClient {
         writtenNodes.add(nodePath);
     }
 
+    /**
+     * Remembers the given node as written bypassing this client, so that the node is deleted
+     * on shutdown as well.
+     */
+    void track(NodePath nodePath) {
+        writtenNodes.add(nodePath);
+    }
+
     @Override
     public void delete(NodePath nodePath) {
         delegate.delete(nodePath);
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.Message;
+import io.spine.base.FieldPath;
+import io.spine.client.CompositeFilter;
+import io.spine.client.Filter;
+import io.spine.client.Target;
+import io.spine.client.TargetFilters;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.client.CompositeFilter.CompositeOperator.ALL;
+import static io.spine.client.Filter.Operator.EQUAL;
+import static io.spine.web.test.given.StateFilters.fieldValue;
+import static io.spine.web.test.given.StateFilters.normalize;
+
+/**
+ * An index of the subscribers to entity states by their subscription targets.
+ *
+ * <p>The subscribers are grouped by the target type. Within a type, a subscriber is placed:
+ * <ol>
+ *     <li>by each of the IDs, if the target filters the entities by IDs;
+ *     <li>otherwise, by the field and the value of an equality filter which every matching
+ *         entity must pass, if there is one;
+ *     <li>otherwise, among the subscribers which must be checked against every entity.
+ * </ol>
+ *
+ * <p>Thus, for an entity state, the {@linkplain #candidates candidates} are found with a lookup
+ * per indexed field rather than by checking every subscriber. The candidates are only those
+ * subscribers which may match the entity. The caller is still expected to check
+ * the {@linkplain StateFilters#matches target filters} against the candidates.
+ *
+ * @param <S>
+ *         the type of the subscribers
+ */
+final class TopicIndex<S> {
+
+    private final Map<String, TypeIndex<S>> types = new HashMap<>();
+    private final Map<S, String> subscriberTypes = new HashMap<>();
+
+    /**
+     * Adds the subscriber to the given target.
+     *
+     * <p>If the subscriber is already in the index, it is replaced.
+     */
+    synchronized void add(S subscriber, Target target) {
+        checkNotNull(subscriber);
+        checkNotNull(target);
+        remove(subscriber);
+        String type = target.getType();
+        types.computeIfAbsent(type, t -> new TypeIndex<>())
+             .add(subscriber, target);
+        subscriberTypes.put(subscriber, type);
+    }
+
+    /**
+     * Removes the subscriber from the index.
+     *
+     * <p>If there is no such subscriber, does nothing.
+     */
+    synchronized void remove(S subscriber) {
+        String type = subscriberTypes.remove(subscriber);
+        if (type == null) {
+            return;
+        }
+        TypeIndex<S> index = types.get(type);
+        index.remove(subscriber);
+        if (index.isEmpty()) {
+            types.remove(type);
+        }
+    }
+
+    /**
+     * Obtains the subscribers which may be interested in the given entity state.
+     *
+     * @param type
+     *         the type URL of the entity state
+     * @param id
+     *         the packed entity ID
+     * @param state
+     *         the entity state
+     * @return the candidate subscribers
+     */
+    synchronized Set<S> candidates(String type, Any id, Message state) {
+        TypeIndex<S> index = types.get(type);
+        return index == null
+               ? new HashSet<>()
+               : index.candidates(id, state);
+    }
+
+    /**
+     * Obtains the number of the subscribers in the index.
+     */
+    synchronized int size() {
+        return subscriberTypes.size();
+    }
+
+    /**
+     * The index of the subscribers to a single entity type.
+     */
+    private static final class TypeIndex<S> {
+
+        private final Map<Object, Set<S>> byId = new HashMap<>();
+        private final Map<FieldPath, Map<Object, Set<S>>> byField = new HashMap<>();
+        private final Set<S> unindexed = new HashSet<>();
+        private final Map<S, Placement> placements = new HashMap<>();
+
+        private void add(S subscriber, Target target) {
+            TargetFilters filters = target.getFilters();
+            Placement placement;
+            if (!target.getIncludeAll() && filters.getIdFilter()
+                                                  .getIdCount() > 0) {
+                Set<Object> ids = new HashSet<>();
+                for (Any id : filters.getIdFilter()
+                                     .getIdList()) {
+                    Object key = normalize(id);
+                    ids.add(key);
+                    byId.computeIfAbsent(key, k -> new HashSet<>())
+                        .add(subscriber);
+                }
+                placement = Placement.byIds(ids);
+            } else {
+                Optional<Filter> equality = target.getIncludeAll()
+                                            ? Optional.empty()
+                                            : requiredEquality(filters);
+                if (equality.isPresent()) {
+                    FieldPath field = equality.get()
+                                              .getFieldPath();
+                    Object value = normalize(equality.get()
+                                                     .getValue());
+                    byField.computeIfAbsent(field, f -> new HashMap<>())
+                           .computeIfAbsent(value, v -> new HashSet<>())
+                           .add(subscriber);
+                    placement = Placement.byField(field, value);
+                } else {
+                    unindexed.add(subscriber);
+                    placement = Placement.unindexed();
+                }
+            }
+            placements.put(subscriber, placement);
+        }
+
+        private void remove(S subscriber) {
+            Placement placement = placements.remove(subscriber);
+            if (placement == null) {
+                return;
+            }
+            for (Object id : placement.ids) {
+                removeFrom(byId, id, subscriber);
+            }
+            if (placement.field != null) {
+                Map<Object, Set<S>> values = byField.get(placement.field);
+                removeFrom(values, checkNotNull(placement.value), subscriber);
+                if (values.isEmpty()) {
+                    byField.remove(placement.field);
+                }
+            }
+            unindexed.remove(subscriber);
+        }
+
+        private Set<S> candidates(Any id, Message state) {
+            Set<S> result = new HashSet<>(unindexed);
+            if (!byId.isEmpty()) {
+                Set<S> withId = byId.get(normalize(id));
+                if (withId != null) {
+                    result.addAll(withId);
+                }
+            }
+            for (Map.Entry<FieldPath, Map<Object, Set<S>>> field : byField.entrySet()) {
+                fieldValue(state, field.getKey())
+                        .map(value -> field.getValue().get(value))
+                        .ifPresent(result::addAll);
+            }
+            return result;
+        }
+
+        private boolean isEmpty() {
+            return placements.isEmpty();
+        }
+
+        /**
+         * Finds an equality filter which every entity matching the filters must pass.
+         *
+         * <p>Such is an {@code EQUAL} filter of a composite filter which requires all of its
+         * filters to pass, or which consists of the single filter.
+         */
+        private static Optional<Filter> requiredEquality(TargetFilters filters) {
+            for (CompositeFilter composite : filters.getFilterList()) {
+                boolean allRequired = composite.getOperator() == ALL
+                        || composite.getFilterCount() == 1;
+                if (!allRequired) {
+                    continue;
+                }
+                for (Filter filter : composite.getFilterList()) {
+                    if (filter.getOperator() == EQUAL) {
+                        return Optional.of(filter);
+                    }
+                }
+            }
+            return Optional.empty();
+        }
+
+        private static <K, S> void removeFrom(Map<K, Set<S>> map, K key, S subscriber) {
+            Set<S> subscribers = map.get(key);
+            if (subscribers != null) {
+                subscribers.remove(subscriber);
+                if (subscribers.isEmpty()) {
+                    map.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Where a subscriber is placed in a {@link TypeIndex}.
+     */
+    private static final class Placement {
+
+        private final Set<Object> ids;
+        private final @Nullable FieldPath field;
+        private final @Nullable Object value;
+
+        private Placement(Set<Object> ids, @Nullable FieldPath field, @Nullable Object value) {
+            this.ids = ids;
+            this.field = field;
+            this.value = value;
+        }
+
+        private static Placement byIds(Set<Object> ids) {
+            return new Placement(ids, null, null);
+        }
+
+        private static Placement byField(FieldPath field, Object value) {
+            return new Placement(new HashSet<>(), field, value);
+        }
+
+        private static Placement unindexed() {
+            return new Placement(new HashSet<>(), null, null);
+        }
+    }
+}
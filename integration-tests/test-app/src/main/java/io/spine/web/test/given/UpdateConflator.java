@@ -0,0 +1,165 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import io.spine.web.firebase.NodePath;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static io.spine.web.test.given.RequestParameters.positiveInt;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Limits the rate of updates written to the subscription nodes.
+ *
+ * <p>For a node registered with a conflation interval, the first update is written right away.
+ * The updates which arrive during the following interval are held back, and only the latest
+ * value of each child is kept. When the interval ends, the kept values are written at once, and
+ * the next interval begins. If nothing has arrived during the interval, the next update is again
+ * written right away.
+ *
+ * <p>Thus, each child of the node is written at most once per interval, and the last written
+ * value is always the latest one.
+ *
+ * <p>The interval is requested by the client via the {@code conflation-interval} parameter of
+ * the subscription request, in milliseconds.
+ */
+final class UpdateConflator {
+
+    static final String INTERVAL_PARAMETER = "conflation-interval";
+
+    private final BiConsumer<NodePath, Map<String, JsonElement>> writer;
+    private final Map<NodePath, Duration> intervals = new ConcurrentHashMap<>();
+
+    /**
+     * The children held back for each node which has its interval running.
+     *
+     * <p>An empty map means the interval is running, but nothing has arrived yet.
+     */
+    private final Map<NodePath, Map<String, JsonElement>> pending = new HashMap<>();
+    private final ScheduledExecutorService executor = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("update-conflator")
+                                      .setDaemon(true)
+                                      .build()
+    );
+
+    /**
+     * Creates a new conflator.
+     *
+     * @param writer
+     *         the function which writes the held back children into the node
+     */
+    UpdateConflator(BiConsumer<NodePath, Map<String, JsonElement>> writer) {
+        this.writer = checkNotNull(writer);
+    }
+
+    /**
+     * Obtains the conflation interval requested in the parameters of the given HTTP request.
+     *
+     * @return the requested interval or {@code Optional.empty()} if none is requested
+     * @throws IllegalArgumentException
+     *         if the interval is not a positive integer
+     */
+    static Optional<Duration> requestedInterval(HttpServletRequest request) {
+        OptionalInt millis = positiveInt(request, INTERVAL_PARAMETER);
+        return millis.isPresent()
+               ? Optional.of(Duration.ofMillis(millis.getAsInt()))
+               : Optional.empty();
+    }
+
+    /**
+     * Starts conflating the updates of the given node.
+     */
+    void register(NodePath node, Duration interval) {
+        checkNotNull(node);
+        checkNotNull(interval);
+        intervals.put(node, interval);
+    }
+
+    /**
+     * Offers the updated children of the given node.
+     *
+     * @return {@code true} if the update is held back and will be written later,
+     *         {@code false} if the caller should write the update right away
+     */
+    synchronized boolean offer(NodePath node, Map<String, JsonElement> children) {
+        Duration interval = intervals.get(node);
+        if (interval == null) {
+            return false;
+        }
+        Map<String, JsonElement> heldBack = pending.get(node);
+        if (heldBack == null) {
+            pending.put(node, new HashMap<>());
+            schedule(node, interval);
+            return false;
+        }
+        heldBack.putAll(children);
+        return true;
+    }
+
+    /**
+     * Stops conflating the updates of the given node and discards the held back children.
+     */
+    synchronized void forget(NodePath node) {
+        intervals.remove(node);
+        pending.remove(node);
+    }
+
+    private void schedule(NodePath node, Duration interval) {
+        executor.schedule(() -> flush(node), interval.toMillis(), MILLISECONDS);
+    }
+
+    private void flush(NodePath node) {
+        Map<String, JsonElement> children;
+        synchronized (this) {
+            children = pending.get(node);
+            Duration interval = intervals.get(node);
+            if (children == null || interval == null) {
+                return;
+            }
+            if (children.isEmpty()) {
+                pending.remove(node);
+                return;
+            }
+            pending.put(node, new HashMap<>());
+            schedule(node, interval);
+        }
+        writer.accept(node, children);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+import static io.spine.web.test.given.DeltaWritingClient.collectChanges;
+
+@DisplayName("`DeltaWritingClient` should")
+class DeltaWritingClientTest {
+
+    private static final String CHILD = "child";
+
+    private static JsonElement json(String value) {
+        return new JsonParser().parse(value);
+    }
+
+    private static Map<String, @Nullable Object> changes(String previous, String current) {
+        Map<String, @Nullable Object> changes = new HashMap<>();
+        collectChanges(CHILD, json(previous), json(current), changes);
+        return changes;
+    }
+
+    @Test
+    @DisplayName("write only the changed fields of nested objects")
+    void writeChangedFields() {
+        Map<String, @Nullable Object> changes =
+                changes("{\"id\":{\"value\":\"u\"},\"name\":\"old\"}",
+                        "{\"id\":{\"value\":\"u\"},\"name\":\"new\"}");
+        assertThat(changes).containsExactly("child/name", "new");
+    }
+
+    @Test
+    @DisplayName("write only the changed fields of an item of a repeated field")
+    void writeChangedItemFields() {
+        Map<String, @Nullable Object> changes =
+                changes("{\"tasks\":[{\"name\":\"a\",\"done\":false},"
+                                + "{\"name\":\"b\",\"done\":false}]}",
+                        "{\"tasks\":[{\"name\":\"a\",\"done\":false},"
+                                + "{\"name\":\"b\",\"done\":true}]}");
+        assertThat(changes).containsExactly("child/tasks/1/done", true);
+    }
+
+    @Test
+    @DisplayName("write the added items and remove the missing ones")
+    void writeAddedAndRemovedItems() {
+        Map<String, @Nullable Object> added = changes("{\"tags\":[\"a\"]}",
+                                                      "{\"tags\":[\"a\",\"b\"]}");
+        assertThat(added).containsExactly("child/tags/1", "b");
+
+        Map<String, @Nullable Object> removed = changes("{\"tags\":[\"a\",\"b\",\"c\"]}",
+                                                        "{\"tags\":[\"a\"]}");
+        assertThat(removed).containsExactly("child/tags/1", null,
+                                            "child/tags/2", null);
+    }
+
+    @Test
+    @DisplayName("remove the missing fields")
+    void removeMissingFields() {
+        Map<String, @Nullable Object> changes = changes("{\"name\":\"a\",\"note\":\"b\"}",
+                                                        "{\"name\":\"a\"}");
+        assertThat(changes).containsExactly("child/note", null);
+    }
+
+    @Test
+    @DisplayName("write nothing if nothing has changed")
+    void writeNothing() {
+        String value = "{\"tasks\":[{\"name\":\"a\"}],\"name\":\"n\"}";
+        assertThat(changes(value, value)).isEmpty();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.protobuf.Any;
+import io.spine.base.FieldPath;
+import io.spine.client.CompositeFilter;
+import io.spine.client.Filter;
+import io.spine.client.IdFilter;
+import io.spine.client.Target;
+import io.spine.client.TargetFilters;
+import io.spine.core.UserId;
+import io.spine.type.TypeUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static io.spine.client.CompositeFilter.CompositeOperator.ALL;
+import static io.spine.client.Filter.Operator.EQUAL;
+import static io.spine.client.Filter.Operator.GREATER_THAN;
+import static io.spine.protobuf.AnyPacker.pack;
+import static io.spine.protobuf.TypeConverter.toAny;
+
+/**
+ * Compares the cost of matching an entity state against the subscriptions through
+ * the {@link TopicIndex} and by checking every subscription.
+ *
+ * <p>For each subscription count, the subscriptions to {@link Task} are split into those
+ * filtering by task IDs, by project, and by assignee. One in a thousand subscriptions uses
+ * a non-equality filter and cannot be indexed.
+ *
+ * <p>Run the {@code main} method to print the average time of matching a single update.
+ */
+public final class TopicIndexBenchmark {
+
+    private static final String TYPE = TypeUrl.of(Task.class)
+                                              .value();
+    private static final int[] SUBSCRIPTION_COUNTS = {1_000, 10_000, 100_000, 1_000_000};
+    private static final int TASKS = 10_000;
+    private static final int PROJECTS = 1_000;
+    private static final int USERS = 1_000;
+    private static final int UPDATES = 10_000;
+
+    /**
+     * Limits the number of filter checks done by the linear scan for a single count.
+     */
+    private static final long SCAN_BUDGET = 20_000_000L;
+
+    private final Random random = new Random(42);
+
+    /**
+     * Prevents instantiation from outside.
+     */
+    private TopicIndexBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        TopicIndexBenchmark benchmark = new TopicIndexBenchmark();
+        System.out.printf("%12s %16s %16s %12s%n",
+                          "subscriptions", "index, ns/update", "scan, ns/update", "candidates");
+        for (int count : SUBSCRIPTION_COUNTS) {
+            benchmark.run(count);
+        }
+    }
+
+    private void run(int count) {
+        List<Target> targets = new ArrayList<>(count);
+        TopicIndex<Integer> index = new TopicIndex<>();
+        for (int i = 0; i < count; i++) {
+            Target target = target(i);
+            targets.add(target);
+            index.add(i, target);
+        }
+        List<Task> updates = new ArrayList<>(UPDATES);
+        for (int i = 0; i < UPDATES; i++) {
+            updates.add(task());
+        }
+
+        long candidates = 0;
+        long matched = 0;
+        long start = System.nanoTime();
+        for (Task task : updates) {
+            Any id = pack(task.getId());
+            Set<Integer> found = index.candidates(TYPE, id, task);
+            candidates += found.size();
+            for (Integer subscriber : found) {
+                if (StateFilters.matches(targets.get(subscriber).getFilters(), id, task)) {
+                    matched++;
+                }
+            }
+        }
+        long indexed = (System.nanoTime() - start) / UPDATES;
+
+        int scanned = (int) Math.max(1, Math.min(UPDATES, SCAN_BUDGET / count));
+        long scanMatched = 0;
+        start = System.nanoTime();
+        for (Task task : updates.subList(0, scanned)) {
+            Any id = pack(task.getId());
+            for (Target target : targets) {
+                if (StateFilters.matches(target.getFilters(), id, task)) {
+                    scanMatched++;
+                }
+            }
+        }
+        long scan = (System.nanoTime() - start) / scanned;
+
+        System.out.printf("%12d %16d %16d %12.1f%n",
+                          count, indexed, scan, (double) candidates / UPDATES);
+        blackhole(matched + scanMatched);
+    }
+
+    private Target target(int i) {
+        TargetFilters.Builder filters = TargetFilters.newBuilder();
+        if (i % 1000 == 999) {
+            filters.addFilter(composite(filter("completed", GREATER_THAN, false)));
+        } else if (i % 3 == 0) {
+            filters.setIdFilter(IdFilter.newBuilder()
+                                        .addId(pack(taskId(random.nextInt(TASKS)))));
+        } else if (i % 3 == 1) {
+            ProjectId project = projectId(random.nextInt(PROJECTS));
+            filters.addFilter(composite(filter("project", EQUAL, project)));
+        } else {
+            UserId assignee = userId(random.nextInt(USERS));
+            filters.addFilter(composite(filter("assignee", EQUAL, assignee)));
+        }
+        return Target.newBuilder()
+                     .setType(TYPE)
+                     .setFilters(filters)
+                     .build();
+    }
+
+    private Task task() {
+        return Task.newBuilder()
+                   .setId(taskId(random.nextInt(TASKS)))
+                   .setProject(projectId(random.nextInt(PROJECTS)))
+                   .setAssignee(userId(random.nextInt(USERS)))
+                   .setName("Benchmark task")
+                   .build();
+    }
+
+    private static CompositeFilter composite(Filter filter) {
+        return CompositeFilter.newBuilder()
+                              .setOperator(ALL)
+                              .addFilter(filter)
+                              .build();
+    }
+
+    private static Filter filter(String field, Filter.Operator operator, Object value) {
+        return Filter.newBuilder()
+                     .setFieldPath(FieldPath.newBuilder()
+                                            .addFieldName(field))
+                     .setOperator(operator)
+                     .setValue(toAny(value))
+                     .build();
+    }
+
+    private static TaskId taskId(int value) {
+        return TaskId.newBuilder()
+                     .setValue("task-" + value)
+                     .build();
+    }
+
+    private static ProjectId projectId(int value) {
+        return ProjectId.newBuilder()
+                        .setValue("project-" + value)
+                        .build();
+    }
+
+    private static UserId userId(int value) {
+        return UserId.newBuilder()
+                     .setValue("user-" + value)
+                     .build();
+    }
+
+    /**
+     * Prevents the JIT from eliminating the measured code.
+     */
+    private static void blackhole(long value) {
+        if (value == Long.MIN_VALUE) {
+            System.out.println(value);
+        }
+    }
+}
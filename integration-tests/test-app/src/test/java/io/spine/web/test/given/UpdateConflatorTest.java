@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021, TeamDev. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Redistribution and use in source and/or binary forms, with or without
+ * modification, must retain the above copyright notice and the following
+ * disclaimer.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package io.spine.web.test.given;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import io.spine.web.firebase.NodePath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@DisplayName("`UpdateConflator` should")
+class UpdateConflatorTest {
+
+    private static final Duration INTERVAL = Duration.ofMillis(200);
+    private static final NodePath NODE = NodePath
+            .newBuilder()
+            .setValue("routed-subscriptions/conflated")
+            .build();
+
+    private final List<Write> writes = new ArrayList<>();
+    private UpdateConflator conflator;
+
+    @BeforeEach
+    void createConflator() {
+        conflator = new UpdateConflator(this::record);
+    }
+
+    private static Map<String, JsonElement> child(String key, JsonPrimitive value) {
+        return ImmutableMap.of(key, value);
+    }
+
+    private synchronized void record(NodePath node, Map<String, JsonElement> children) {
+        writes.add(new Write(node, children, System.nanoTime()));
+    }
+
+    private synchronized List<Write> writes() {
+        return new ArrayList<>(writes);
+    }
+
+    @Test
+    @DisplayName("let the updates of unregistered nodes be written right away")
+    void passUnregistered() {
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(1)))).isFalse();
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(2)))).isFalse();
+    }
+
+    @Test
+    @DisplayName("write each child at most once per interval")
+    void mergeRapidUpdates() throws InterruptedException {
+        conflator.register(NODE, INTERVAL);
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(0)))).isFalse();
+        long end = System.nanoTime() + INTERVAL.multipliedBy(3).toNanos();
+        int value = 1;
+        while (System.nanoTime() < end) {
+            assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(value++)))).isTrue();
+            Thread.sleep(5);
+        }
+        Thread.sleep(INTERVAL.multipliedBy(2).toMillis());
+
+        List<Write> written = writes();
+        assertThat(written.size()).isAtLeast(2);
+        assertThat(written.size()).isAtMost(4);
+        long tolerance = Duration.ofMillis(20).toNanos();
+        for (int i = 1; i < written.size(); i++) {
+            long gap = written.get(i).nanoTime - written.get(i - 1).nanoTime;
+            assertThat(gap).isAtLeast(INTERVAL.toNanos() - tolerance);
+        }
+    }
+
+    @Test
+    @DisplayName("write the latest value of each child")
+    void writeLastValue() throws InterruptedException {
+        conflator.register(NODE, INTERVAL);
+        assertThat(conflator.offer(NODE, child("first", new JsonPrimitive(0)))).isFalse();
+        for (int i = 1; i <= 10; i++) {
+            conflator.offer(NODE, child("first", new JsonPrimitive(i)));
+        }
+        conflator.offer(NODE, child("second", new JsonPrimitive("only")));
+        Thread.sleep(INTERVAL.multipliedBy(2).toMillis());
+
+        Write write = writes().get(0);
+        assertThat(write.node).isEqualTo(NODE);
+        assertThat(write.children).containsExactly("first", new JsonPrimitive(10),
+                                                   "second", new JsonPrimitive("only"));
+    }
+
+    @Test
+    @DisplayName("drop the held back updates of a forgotten node")
+    void dropForgotten() throws InterruptedException {
+        conflator.register(NODE, INTERVAL);
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(0)))).isFalse();
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(1)))).isTrue();
+        conflator.forget(NODE);
+        Thread.sleep(INTERVAL.multipliedBy(2).toMillis());
+
+        assertThat(writes()).isEmpty();
+        assertThat(conflator.offer(NODE, child("child", new JsonPrimitive(2)))).isFalse();
+    }
+
+    /**
+     * A write of the held back children.
+     */
+    private static final class Write {
+
+        private final NodePath node;
+        private final Map<String, JsonElement> children;
+        private final long nanoTime;
+
+        private Write(NodePath node, Map<String, JsonElement> children, long nanoTime) {
+            this.node = node;
+            this.children = children;
+            this.nanoTime = nanoTime;
+        }
+    }
+}